@@ -0,0 +1,148 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// generates the boards for a range of seeds on several threads and streams
+// them to one file, without any window, e.g.
+//   java BatchGenerator 0 99999 40 30 8 boards.bin
+// writes the 40x30 boards for seeds 0 to 99999 using 8 threads
+//
+// every board is exactly what makeRandomBoard(new Random(seed)) lays out, with
+// the power station in the top left corner. The file starts with a header
+// (magic, version, width, height, first seed, board count), followed by one
+// record per seed in order: the seed, then the tiles' connection masks packed
+// two to a byte as in PackedBoard.packMasks
+class BatchGenerator {
+  static final int MAGIC = 0x4C454D42; // "LEMB"
+  static final int VERSION = 1;
+
+  long firstSeed;
+  long lastSeed;
+  int width;
+  int height;
+  int threads;
+
+  BatchGenerator(long firstSeed, long lastSeed, int width, int height, int threads) {
+    this.firstSeed = firstSeed;
+    this.lastSeed = lastSeed;
+    this.width = width;
+    this.height = height;
+    this.threads = threads;
+  }
+
+  public static void main(String[] args)
+      throws IOException, InterruptedException, ExecutionException {
+    if (args.length != 6) {
+      System.err.println(
+          "usage: java BatchGenerator <first seed> <last seed> <width> <height> <threads> <file>");
+      return;
+    }
+    BatchGenerator batch = new BatchGenerator(Long.parseLong(args[0]), Long.parseLong(args[1]),
+        Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+
+    long start = System.nanoTime();
+    long boards;
+    try (OutputStream out = new FileOutputStream(args[5])) {
+      boards = batch.write(out);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d boards in %.2f s on %d threads: %.1f boards/sec%n", boards, seconds,
+        batch.threads, boards / seconds);
+  }
+
+  // generates every board in the range and writes them to the given stream in
+  // seed order, returning how many were written; at most a few boards per
+  // thread are held in memory waiting for their turn
+  long write(OutputStream out) throws IOException, InterruptedException, ExecutionException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(this.width);
+    data.writeInt(this.height);
+    data.writeLong(this.firstSeed);
+    data.writeLong(this.lastSeed - this.firstSeed + 1);
+
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+    ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    long next = this.firstSeed;
+    long written = 0;
+    try {
+      while (next <= this.lastSeed || !pending.isEmpty()) {
+        while (next <= this.lastSeed && pending.size() < this.threads * 4) {
+          long seed = next++;
+          pending.add(pool.submit(() -> this.record(seed)));
+        }
+        data.write(pending.poll().get());
+        written++;
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    data.flush();
+    return written;
+  }
+
+  // generates the board for the given seed, returning its record as written
+  // to the file
+  byte[] record(long seed) {
+    PackedBoard packed = PackedBoard.random(this.width, this.height, 0, 0, new Random(seed));
+    byte[] masks = packed.packMasks();
+    byte[] record = new byte[8 + masks.length];
+    for (int i = 0; i < 8; i++) {
+      record[i] = (byte) (seed >>> (56 - 8 * i));
+    }
+    System.arraycopy(masks, 0, record, 8, masks.length);
+    return record;
+  }
+
+  // reads the boards written by write back in, calling the given consumer
+  // with each seed and board; returns how many boards there were
+  static long read(InputStream in, BoardConsumer consumer) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+      throw new IOException("not a board batch file");
+    }
+    int width = data.readInt();
+    int height = data.readInt();
+    data.readLong();
+    long count = data.readLong();
+    byte[] masks = new byte[(width * height + 1) / 2];
+
+    for (long i = 0; i < count; i++) {
+      long seed = data.readLong();
+      data.readFully(masks);
+      PackedBoard packed = new PackedBoard(width, height);
+      packed.unpackMasks(masks, 0);
+      packed.setStation(0, true);
+      packed.setPowered(0, true);
+      consumer.accept(seed, packed);
+    }
+    return count;
+  }
+
+  // reads the boards in the given file, as read does
+  static long read(String file, BoardConsumer consumer) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return BatchGenerator.read(in, consumer);
+    }
+  }
+}
+
+// does something with each board read from a batch file
+interface BoardConsumer {
+  // takes the board generated from the given seed
+  void accept(long seed, PackedBoard packed);
+}
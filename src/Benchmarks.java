@@ -0,0 +1,245 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// times the hot paths of LightEmAll without opening a window, e.g.
+//   java Benchmarks 3 100 2000
+// runs every benchmark on 3x3, 100x100 and 2000x2000 boards (with no sizes,
+// on 3x3 up to 2000x2000). Each benchmark is warmed up, then run for about a
+// second, and reported as time per operation, bytes allocated per operation
+// on any thread, allocation rate and how many collections ran meanwhile, so
+// both speed and garbage show up when comparing two versions
+//
+//   java Benchmarks generators 1000 5000
+// instead times building a spanning tree with each BoardGenerator, on
+// 1000x1000 and 5000x5000 boards (with no sizes, 100x100 up to 5000x5000);
+// the bytes per tree are the generator's scratch space plus the masks
+class Benchmarks {
+  static final int[] SIZES = new int[] {3, 10, 100, 500, 1000, 2000};
+  static final int[] GENERATOR_SIZES = new int[] {100, 1000, 5000};
+  static final long WARMUP_NANOS = 300_000_000L;
+  static final long MEASURE_NANOS = 1_000_000_000L;
+
+  // stops the JIT from throwing away results nobody reads
+  long sink;
+
+  public static void main(String[] args) {
+    boolean generators = args.length > 0 && args[0].equals("generators");
+    int skip = generators ? 1 : 0;
+    int[] sizes = generators ? GENERATOR_SIZES : SIZES;
+    if (args.length > skip) {
+      sizes = new int[args.length - skip];
+      for (int i = 0; i < sizes.length; i++) {
+        sizes[i] = Integer.parseInt(args[skip + i]);
+      }
+    }
+
+    Benchmarks bench = new Benchmarks();
+    System.out.printf("%-24s %6s %14s %14s %10s %5s%n", "benchmark", "size", "ns/op", "B/op",
+        "MB/s", "gcs");
+    for (int size : sizes) {
+      if (generators) {
+        bench.runGenerators(size);
+      }
+      else {
+        bench.runAll(size);
+      }
+    }
+  }
+
+  // times building a size x size spanning tree with each generator
+  void runGenerators(int size) {
+    BoardGenerator[] generators = new BoardGenerator[] {new KruskalGenerator(),
+        new PrimGenerator(), new DepthFirstGenerator(), new WilsonGenerator(),
+        new ParallelBoardGenerator(ForkJoinPool.commonPool())};
+    String[] names = new String[] {"tree kruskal", "tree prim", "tree depth-first",
+        "tree wilson", "tree parallel boruvka"};
+    for (int i = 0; i < generators.length; i++) {
+      BoardGenerator generator = generators[i];
+      Random rand = new Random(size);
+      this.measure(names[i], size, () -> {
+        this.sink += generator.spanningTree(size, size, rand).length;
+        return 1;
+      });
+    }
+  }
+
+  // runs every benchmark on a size x size board
+  void runAll(int size) {
+    int tiles = size * size;
+    Random rand = new Random(size);
+    int[] rows = new int[4096];
+    int[] cols = new int[4096];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = rand.nextInt(size);
+      cols[i] = rand.nextInt(size);
+    }
+    int[] partners = new int[tiles];
+    for (int i = 1; i < tiles; i++) {
+      partners[i] = rand.nextInt(i);
+    }
+
+    LightEmAll game = new LightEmAll(size, size);
+    long[] seed = new long[1];
+    this.measure("makeRandomBoard", size, () -> {
+      game.makeRandomBoard(new Random(seed[0]++));
+      return 1;
+    });
+
+    ParallelBoardGenerator generator = new ParallelBoardGenerator(ForkJoinPool.commonPool());
+    this.measure("parallel generate", size, () -> {
+      this.sink += generator.generate(size, size, seed[0]++).masks.length;
+      return 1;
+    });
+
+    this.measure("BoardSolver.solve", size, () -> {
+      BoardSolver solver = new BoardSolver(PackedBoard.random(size, size, 0, 0,
+          new Random(seed[0]++)));
+      this.sink += solver.solve() ? 1 : 0;
+      return 1;
+    });
+
+    game.makeRandomBoard(new Random(0));
+    this.measure("updatePower", size, () -> {
+      game.updatePower();
+      return 1;
+    });
+
+    int[] next = new int[1];
+    this.measure("rotateAt", size, () -> {
+      int i = next[0]++ & 4095;
+      game.rotateAt(rows[i], cols[i]);
+      return 1;
+    });
+
+    game.setLighting(true);
+    this.measure("rotateAt lighting", size, () -> {
+      int i = next[0]++ & 4095;
+      game.rotateAt(rows[i], cols[i]);
+      return 1;
+    });
+    game.setLighting(false);
+
+    PackedBoard packed = new PackedBoard(game);
+    IslandLabeler islands = new IslandLabeler(size, size, ForkJoinPool.commonPool());
+    System.arraycopy(packed.masks, 0, islands.masks, 0, tiles);
+    this.measure("IslandLabeler.label", size, () -> {
+      islands.label();
+      return 1;
+    });
+
+    this.measure("IslandLabeler.update", size, () -> {
+      int i = next[0]++ & 4095;
+      int index = rows[i] * size + cols[i];
+      packed.rotate(index);
+      islands.update(index, packed.mask(index));
+      return 1;
+    });
+
+    BoardRasterizer rasterizer = new BoardRasterizer(2, ForkJoinPool.commonPool());
+    this.measure("BoardRasterizer.render", size, () -> {
+      this.sink += rasterizer.render(packed).getWidth();
+      return 1;
+    });
+
+    GamePiece piece = game.pieceAt(tiles / 2);
+    this.measure("GamePiece.rotate", size, () -> {
+      piece.rotate();
+      return 1;
+    });
+
+    this.measure("checkWin", size, () -> {
+      game.checkWin();
+      return 1;
+    });
+
+    this.measure("UnionFind.union", size, () -> {
+      UnionFind uf = new UnionFind(tiles);
+      for (int i = 1; i < tiles; i++) {
+        uf.union(partners[i], i);
+      }
+      this.sink += uf.find(0);
+      return Math.max(1, tiles - 1);
+    });
+
+    this.measure("makeScene full", size, () -> {
+      game.scene = null;
+      this.sink += game.makeScene().hashCode();
+      return 1;
+    });
+
+    this.measure("makeScene one click", size, () -> {
+      int i = next[0]++ & 4095;
+      game.rotateAt(rows[i], cols[i]);
+      this.sink += game.makeScene().hashCode();
+      return 1;
+    });
+
+    game.enableViewport(800, 600);
+    this.measure("makeScene viewport", size, () -> {
+      game.scene = null;
+      this.sink += game.makeScene().hashCode();
+      return 1;
+    });
+
+    if (this.sink == 42) {
+      System.out.println();
+    }
+  }
+
+  // warms up the given benchmark, then runs it for about a second and prints
+  // what each operation cost
+  void measure(String name, int size, Benchmark benchmark) {
+    long end = System.nanoTime() + WARMUP_NANOS;
+    while (System.nanoTime() < end) {
+      benchmark.run();
+    }
+
+    long ops = 0;
+    long gcs = this.collections();
+    long allocated = this.allocated();
+    long start = System.nanoTime();
+    long now = start;
+    while (now - start < MEASURE_NANOS) {
+      ops += benchmark.run();
+      now = System.nanoTime();
+    }
+    long bytes = this.allocated() - allocated;
+    gcs = this.collections() - gcs;
+
+    double seconds = (now - start) / 1e9;
+    System.out.printf("%-24s %6d %14.1f %14.1f %10.1f %5d%n", name, size,
+        (now - start) / (double) ops, bytes / (double) ops, bytes / 1e6 / seconds, gcs);
+  }
+
+  // returns how many bytes every live thread has allocated so far, or 0 if
+  // the JVM can't tell
+  long allocated() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+    long total = 0;
+    for (long bytes : counting.getThreadAllocatedBytes(counting.getAllThreadIds())) {
+      total += Math.max(0, bytes);
+    }
+    return total;
+  }
+
+  // returns how many garbage collections have run so far
+  long collections() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionCount());
+    }
+    return total;
+  }
+}
+
+// represents one operation being timed
+interface Benchmark {
+  // does the work once, returning how many operations that counts as
+  int run();
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// a board saved in the compact binary format, mapped into memory so even a
+// huge board opens without reading every tile up front
+//
+// the file is a 64 byte header, then the number of power stations and the
+// index of each one's tile, first the station the arrow keys start on, then
+// the tiles' connection masks, packed two to a byte with the first tile of
+// each pair in the low four bits, and then, if the header says so, the
+// solved masks packed the same way. The header holds, as big-endian values:
+// the magic number, the format version, width, height, the first power
+// station's row and column, the seed the board was generated from, and a
+// flags word; the rest is reserved and left as zeros. Version 1 files have
+// no list of stations, just the one in the header
+class BoardFile {
+  static final int MAGIC = 0x4C454D46; // "LEMF"
+  static final int VERSION = 2;
+  static final int HEADER = 64;
+  // set in the flags word when the file holds the solved masks
+  static final int HAS_SOLUTION = 1;
+
+  int width;
+  int height;
+  int stationRow;
+  int stationCol;
+  long seed;
+  int flags;
+  // the index of every power station's tile, and where the masks start
+  int[] stations;
+  int masksAt;
+  ByteBuffer data;
+
+  // maps the board saved in the given file
+  BoardFile(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("board file too big to map: " + file);
+      }
+      this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (this.data.limit() < HEADER || this.data.getInt(0) != MAGIC) {
+      throw new IOException("not a board file: " + file);
+    }
+    int version = this.data.getInt(4);
+    if (version != 1 && version != VERSION) {
+      throw new IOException("unsupported board file version " + version);
+    }
+    this.width = this.data.getInt(8);
+    this.height = this.data.getInt(12);
+    this.stationRow = this.data.getInt(16);
+    this.stationCol = this.data.getInt(20);
+    this.seed = this.data.getLong(24);
+    this.flags = this.data.getInt(32);
+    if (version == 1) {
+      this.stations = new int[] {this.stationRow * this.width + this.stationCol};
+      this.masksAt = HEADER;
+    }
+    else {
+      int count = this.data.limit() < HEADER + 4 ? -1 : this.data.getInt(HEADER);
+      if (count < 1 || count > this.width * this.height
+          || this.data.limit() < HEADER + 4 + 4L * count) {
+        throw new IOException("board file is truncated: " + file);
+      }
+      this.stations = new int[count];
+      for (int k = 0; k < count; k++) {
+        this.stations[k] = this.data.getInt(HEADER + 4 + 4 * k);
+      }
+      this.masksAt = HEADER + 4 + 4 * count;
+    }
+    if (this.data.limit() < this.masksAt + this.packedSize() * (this.hasSolution() ? 2 : 1)) {
+      throw new IOException("board file is truncated: " + file);
+    }
+  }
+
+  // saves the given board, and its solved masks unless solution is null, to
+  // the given file, with its power stations in the order of their tiles
+  static void save(Path file, PackedBoard packed, long seed, byte[] solution) throws IOException {
+    int count = 0;
+    for (long word : packed.stations) {
+      count += Long.bitCount(word);
+    }
+    int[] stations = new int[Math.max(1, count)];
+    count = 0;
+    for (int index = 0; index < packed.masks.length; index++) {
+      if (packed.isStation(index)) {
+        stations[count++] = index;
+      }
+    }
+    BoardFile.save(file, packed, stations, seed, solution);
+  }
+
+  // saves the given board, with power stations on the tiles at the given
+  // indices, first the one the arrow keys start on, and its solved masks
+  // unless solution is null, to the given file
+  static void save(Path file, PackedBoard packed, int[] stations, long seed, byte[] solution)
+      throws IOException {
+    int packedSize = (packed.masks.length + 1) / 2;
+    long size = HEADER + 4 + 4L * stations.length + (long) packedSize * (solution == null ? 1 : 2);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("board too big to map: " + packed.width + "x" + packed.height);
+    }
+    int station = stations[0];
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      out.putInt(MAGIC);
+      out.putInt(VERSION);
+      out.putInt(packed.width);
+      out.putInt(packed.height);
+      out.putInt(station / packed.width);
+      out.putInt(station % packed.width);
+      out.putLong(seed);
+      out.putInt(solution == null ? 0 : HAS_SOLUTION);
+      out.position(HEADER);
+      out.putInt(stations.length);
+      for (int index : stations) {
+        out.putInt(index);
+      }
+      BoardFile.putMasks(out, packed.masks);
+      if (solution != null) {
+        BoardFile.putMasks(out, solution);
+      }
+      out.force();
+    }
+  }
+
+  // saves the given game, as it is now, to the given file, along with its
+  // solution if it knows it, keeping its power stations in order
+  static void save(Path file, LightEmAll game, long seed) throws IOException {
+    int[] stations = new int[game.stations.length];
+    for (int k = 0; k < stations.length; k++) {
+      stations[k] = game.stationIndex(k);
+    }
+    BoardFile.save(file, new PackedBoard(game), stations, seed, game.solution);
+  }
+
+  // writes the given masks two to a byte
+  static void putMasks(ByteBuffer out, byte[] masks) {
+    for (int i = 0; i < masks.length; i += 2) {
+      int high = i + 1 < masks.length ? masks[i + 1] : 0;
+      out.put((byte) (masks[i] | high << 4));
+    }
+  }
+
+  // does the file hold the solved masks?
+  boolean hasSolution() {
+    return (this.flags & HAS_SOLUTION) != 0;
+  }
+
+  // returns how many bytes one set of packed masks takes
+  int packedSize() {
+    return (this.width * this.height + 1) / 2;
+  }
+
+  // returns the connection mask of the tile at the given position
+  int mask(int row, int col) {
+    return this.nibble(this.masksAt, row * this.width + col);
+  }
+
+  // returns the solved connection mask of the tile at the given position
+  int solutionMask(int row, int col) {
+    return this.nibble(this.masksAt + this.packedSize(), row * this.width + col);
+  }
+
+  // is there a power station on the tile at the given index?
+  boolean isStation(int index) {
+    for (int station : this.stations) {
+      if (station == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // returns the mask of the given tile from the set of masks starting at the
+  // given offset
+  int nibble(int offset, int index) {
+    return (this.data.get(offset + (index >> 1)) >> ((index & 1) << 2)) & 0xF;
+  }
+
+  // returns a GamePiece view of the tile at the given position, read from the
+  // file when asked for; only the power stations start out powered
+  GamePiece pieceAt(int row, int col) {
+    GamePiece gp = new GamePiece(row, col);
+    gp.setMask(this.mask(row, col));
+    gp.powerStation = this.isStation(row * this.width + col);
+    gp.powered = gp.powerStation;
+    return gp;
+  }
+
+  // reads the whole board in
+  PackedBoard toPackedBoard() {
+    PackedBoard packed = new PackedBoard(this.width, this.height);
+    for (int i = 0; i < packed.masks.length; i++) {
+      packed.masks[i] = (byte) this.nibble(this.masksAt, i);
+    }
+    for (int station : this.stations) {
+      packed.setStation(station, true);
+      packed.setPowered(station, true);
+    }
+    packed.solution = this.solution();
+    return packed;
+  }
+
+  // reads the whole board in as a game, generated from the saved seed, with
+  // its power stations in the order they were saved in
+  LightEmAll toGame() {
+    LightEmAll game = new LightEmAll(this.toPackedBoard(), this.seed);
+    game.stations = this.stations.clone();
+    game.powerRow = this.stationRow;
+    game.powerCol = this.stationCol;
+    return game;
+  }
+
+  // returns the solved masks, or null if the file doesn't hold them
+  byte[] solution() {
+    if (!this.hasSolution()) {
+      return null;
+    }
+    byte[] solution = new byte[this.width * this.height];
+    for (int i = 0; i < solution.length; i++) {
+      solution[i] = (byte) this.nibble(this.masksAt + this.packedSize(), i);
+    }
+    return solution;
+  }
+}
@@ -0,0 +1,69 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// builds the random spanning trees boards are made from; the board is then
+// scrambled and given its station the same way whichever tree it started as
+//
+// every tree is just as solvable, but each algorithm leaves its own texture:
+// Kruskal's and Prim's make many short dead ends branching off everywhere,
+// depth-first search makes long winding corridors with few branches, and
+// Wilson's picks among all spanning trees with equal chance, somewhere in
+// between. Those that draw many numbers draw them from a SplittableRandom
+// seeded from the given Random rather than from the Random itself, which
+// costs an atomic update per draw
+interface BoardGenerator {
+  // returns the connection mask of each tile of a random spanning tree over
+  // a width x height board, indexed by row * width + col, drawing from rand
+  byte[] spanningTree(int width, int height, Random rand);
+
+  // returns the directions from the given tile that stay on the board
+  static int onBoard(int index, int width, int height) {
+    int row = index / width;
+    int col = index - row * width;
+    int dirs = 0;
+    if (row > 0) {
+      dirs |= GamePiece.TOP;
+    }
+    if (col < width - 1) {
+      dirs |= GamePiece.RIGHT;
+    }
+    if (row < height - 1) {
+      dirs |= GamePiece.BOTTOM;
+    }
+    if (col > 0) {
+      dirs |= GamePiece.LEFT;
+    }
+    return dirs;
+  }
+
+  // returns the index of the tile next to the given one in the given
+  // direction
+  static int neighbor(int index, int width, int dir) {
+    if (dir == GamePiece.TOP) {
+      return index - width;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return index + 1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return index + width;
+    }
+    else {
+      return index - 1;
+    }
+  }
+
+  // returns one of the given directions, each as likely as the others
+  static int pick(int dirs, SplittableRandom random) {
+    for (int skip = random.nextInt(Integer.bitCount(dirs)); skip > 0; skip--) {
+      dirs &= dirs - 1;
+    }
+    return Integer.lowestOneBit(dirs);
+  }
+
+  // runs a wire from the given tile to its neighbor in the given direction
+  static void connect(byte[] masks, int width, int index, int dir) {
+    masks[index] |= dir;
+    masks[BoardGenerator.neighbor(index, width, dir)] |= GamePiece.opposite(dir);
+  }
+}
@@ -0,0 +1,187 @@
+import java.util.HashMap;
+import java.util.Random;
+
+// keeps ready-to-play games of the sizes asked for, so a new game doesn't
+// have to wait for its board to be generated
+//
+// once started, a worker thread generates the boards in the background, from
+// a stream of seeds, until every size has perSize games waiting. Taking a game hands
+// over one that's waiting and wakes the worker to replace it; only a size
+// that has never been asked for, or whose games ran out, is generated on the
+// taking thread. The waiting games may take up to maxBytes between them,
+// judged from their tile counts, and when a size needs room the sizes taken
+// least often give up their games first
+class BoardPool {
+  // roughly how many bytes a tile of a game takes: the GamePiece, its two
+  // list slots and its share of the power and redraw arrays
+  static final long BYTES_PER_TILE = 72;
+
+  long maxBytes;
+  int perSize;
+  Random seeds;
+  // the sizes asked for so far, keyed by width << 32 | height
+  HashMap<Long, PoolSize> sizes;
+  long bytes;
+  boolean closed;
+  Thread worker;
+
+  // keeps up to perSize games of each size and up to maxBytes in all, with
+  // boards generated from the seeds drawn from the given seed; no games are
+  // generated in the background until the pool is started
+  BoardPool(long maxBytes, int perSize, long seed) {
+    this.maxBytes = maxBytes;
+    this.perSize = perSize;
+    this.seeds = new Random(seed);
+    this.sizes = new HashMap<Long, PoolSize>();
+    this.worker = new Thread(this::fill, "board pool");
+    this.worker.setDaemon(true);
+  }
+
+  // starts the worker generating games in the background
+  void start() {
+    this.worker.start();
+  }
+
+  // returns a game of the given size, one that's waiting if there is one
+  LightEmAll take(int width, int height) {
+    long seed;
+    synchronized (this) {
+      PoolSize size = this.size(width, height);
+      size.uses++;
+      LightEmAll game = size.ready.poll();
+      if (game != null) {
+        this.bytes -= size.bytes;
+        this.notifyAll();
+        return game;
+      }
+      seed = this.seeds.nextLong();
+      this.notifyAll();
+    }
+    return new LightEmAll(width, height, seed);
+  }
+
+  // starts keeping games of the given size ready before any is taken
+  synchronized void prepare(int width, int height) {
+    this.size(width, height);
+    this.notifyAll();
+  }
+
+  // returns how many games of the given size are waiting
+  synchronized int ready(int width, int height) {
+    PoolSize size = this.sizes.get((long) width << 32 | height);
+    return size == null ? 0 : size.ready.size();
+  }
+
+  // returns the entry for the given size, adding it if it's new
+  PoolSize size(int width, int height) {
+    long key = (long) width << 32 | height;
+    PoolSize size = this.sizes.get(key);
+    if (size == null) {
+      size = new PoolSize(width, height);
+      this.sizes.put(key, size);
+    }
+    return size;
+  }
+
+  // stops the worker; games already waiting can still be taken
+  void close() throws InterruptedException {
+    synchronized (this) {
+      this.closed = true;
+      this.notifyAll();
+    }
+    this.worker.join();
+  }
+
+  // what the worker does: generates games until the pool is closed, waiting
+  // whenever no size is short of them
+  void fill() {
+    while (true) {
+      synchronized (this) {
+        while (!this.closed && this.neediest() == null) {
+          try {
+            this.wait();
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (this.closed) {
+          return;
+        }
+      }
+      this.generate();
+    }
+  }
+
+  // generates a game for whichever size is most in demand and short of
+  // games, returning false if there's none
+  boolean generate() {
+    PoolSize size;
+    long seed;
+    synchronized (this) {
+      size = this.neediest();
+      if (size == null) {
+        return false;
+      }
+      seed = this.seeds.nextLong();
+    }
+    this.offer(size, new LightEmAll(size.width, size.height, seed));
+    return true;
+  }
+
+  // keeps the given game of the given size ready if there's room for it,
+  // returning whether there was
+  synchronized boolean offer(PoolSize size, LightEmAll game) {
+    if (!this.makeRoom(size)) {
+      return false;
+    }
+    size.ready.add(game);
+    this.bytes += size.bytes;
+    return true;
+  }
+
+  // returns the most often taken size with fewer than perSize games waiting
+  // that there is room for, or null if there's none
+  PoolSize neediest() {
+    PoolSize neediest = null;
+    for (PoolSize size : this.sizes.values()) {
+      if (size.ready.size() < this.perSize && (neediest == null || size.uses > neediest.uses)
+          && this.room(size) >= size.bytes) {
+        neediest = size;
+      }
+    }
+    return neediest;
+  }
+
+  // returns how many bytes a game of the given size could have, counting
+  // those taken by the games of sizes taken less often
+  long room(PoolSize size) {
+    long room = this.maxBytes - this.bytes;
+    for (PoolSize other : this.sizes.values()) {
+      if (other.uses < size.uses) {
+        room += other.bytes * other.ready.size();
+      }
+    }
+    return room;
+  }
+
+  // makes room for one more game of the given size by dropping the games of
+  // sizes taken less often, returning whether there is room now
+  boolean makeRoom(PoolSize size) {
+    while (this.bytes + size.bytes > this.maxBytes) {
+      PoolSize victim = null;
+      for (PoolSize other : this.sizes.values()) {
+        if (!other.ready.isEmpty() && other.uses < size.uses
+            && (victim == null || other.uses < victim.uses)) {
+          victim = other;
+        }
+      }
+      if (victim == null) {
+        return false;
+      }
+      this.bytes -= victim.bytes * victim.ready.size();
+      victim.ready.clear();
+    }
+    return true;
+  }
+}
@@ -0,0 +1,150 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+
+// paints packed boards straight into the pixels of a BufferedImage, for
+// thumbnails and for exporting boards far too big to draw as WorldImages
+//
+// a tile looks the way GamePiece.drawTile draws it, with a square standing in
+// for the power station's star, and tiles smaller than DETAIL_SIZE pixels are
+// plain cells the way makeScene draws them. Every look a tile can have is
+// painted once into a pattern, and a tile is then a row copy per pixel row.
+// The rows of tiles are split into stripes of STRIPE_ROWS painted in
+// parallel, each writing only its own part of the pixel array
+class BoardRasterizer {
+  static final int STRIPE_ROWS = 16;
+  static final int STATION_OUTLINE = new Color(255, 128, 0).getRGB();
+  static final int STATION_FILL = new Color(0, 255, 255).getRGB();
+
+  int tileSize;
+  ForkJoinPool pool;
+  // the pixels of each look a tile can have, indexed by its connection mask,
+  // plus 16 if it's powered and 32 if the power station is on it
+  int[][] patterns;
+
+  BoardRasterizer(int tileSize, ForkJoinPool pool) {
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("tiles must be at least a pixel wide");
+    }
+    this.tileSize = tileSize;
+    this.pool = pool;
+    this.patterns = new int[64][];
+    for (int look = 0; look < 64; look++) {
+      this.patterns[look] = BoardRasterizer.pattern(look & 15, (look & 16) != 0,
+          (look & 32) != 0, tileSize);
+    }
+  }
+
+  // returns the pixels of a tile with the given wires, row by row
+  static int[] pattern(int mask, boolean powered, boolean station, int size) {
+    int[] pixels = new int[size * size];
+    if (size < LightEmAll.DETAIL_SIZE) {
+      int cell = station ? STATION_FILL : (powered ? Color.YELLOW : Color.DARK_GRAY).getRGB();
+      Arrays.fill(pixels, cell);
+      return pixels;
+    }
+
+    int wire = (powered ? Color.YELLOW : Color.LIGHT_GRAY).getRGB();
+    int wireWidth = Math.max(1, size / 10);
+    int half = (size + 1) / 2;
+    int low = (size - wireWidth) / 2;
+    int high = low + wireWidth;
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        boolean inV = x >= low && x < high;
+        boolean inH = y >= low && y < high;
+        int color;
+        if (inV && inH || inV && ((mask & GamePiece.TOP) != 0 && y < half
+            || (mask & GamePiece.BOTTOM) != 0 && y >= size - half)
+            || inH && ((mask & GamePiece.LEFT) != 0 && x < half
+            || (mask & GamePiece.RIGHT) != 0 && x >= size - half)) {
+          color = wire;
+        }
+        else if (x == 0 || y == 0 || x == size - 1 || y == size - 1) {
+          color = Color.BLACK.getRGB();
+        }
+        else {
+          color = Color.DARK_GRAY.getRGB();
+        }
+        pixels[y * size + x] = color;
+      }
+    }
+
+    if (station) {
+      int side = Math.max(3, size / 3);
+      int from = (size - side) / 2;
+      for (int y = from; y < from + side; y++) {
+        for (int x = from; x < from + side; x++) {
+          boolean edge = y == from || x == from || y == from + side - 1 || x == from + side - 1;
+          pixels[y * size + x] = edge ? STATION_OUTLINE : STATION_FILL;
+        }
+      }
+    }
+    return pixels;
+  }
+
+  // returns a new image of the given board, with its tiles powered the way
+  // its powered bits say
+  BufferedImage render(PackedBoard board) {
+    BufferedImage image = new BufferedImage(board.width * this.tileSize,
+        board.height * this.tileSize, BufferedImage.TYPE_INT_RGB);
+    this.paint(board, image);
+    return image;
+  }
+
+  // returns a new image of the given game's board
+  BufferedImage render(LightEmAll game) {
+    return this.render(new PackedBoard(game));
+  }
+
+  // paints the given board over the given image, which must be an int RGB
+  // image exactly the board's size in pixels
+  void paint(PackedBoard board, BufferedImage image) {
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int size = this.tileSize;
+    int stride = board.width * size;
+    if (pixels.length != stride * board.height * size) {
+      throw new IllegalArgumentException("the image isn't the size of the board");
+    }
+
+    this.pool.invoke(new RangeTask((from, to) -> {
+      for (int row = from; row < to; row++) {
+        int first = row * board.width;
+        for (int y = 0; y < size; y++) {
+          int at = (row * size + y) * stride;
+          int offset = y * size;
+          for (int index = first; index < first + board.width; index++) {
+            int look = board.masks[index]
+                | (int) (board.powered[index >> 6] >>> index & 1) << 4
+                | (int) (board.stations[index >> 6] >>> index & 1) << 5;
+            if (size == 1) {
+              pixels[at] = this.patterns[look][0];
+            }
+            else {
+              System.arraycopy(this.patterns[look], offset, pixels, at, size);
+            }
+            at += size;
+          }
+        }
+      }
+      return 0;
+    }, 0, board.height, STRIPE_ROWS));
+  }
+
+  // writes the given image to the given file as a PNG
+  static void writePng(BufferedImage image, Path path) throws IOException {
+    if (!ImageIO.write(image, "png", path.toFile())) {
+      throw new IOException("no PNG writer is available");
+    }
+  }
+
+  // paints the given board and writes it to the given file as a PNG
+  void export(PackedBoard board, Path path) throws IOException {
+    BoardRasterizer.writePng(this.render(board), path);
+  }
+}
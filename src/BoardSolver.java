@@ -0,0 +1,911 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// finds rotations that connect every tile of a scrambled board into one
+// network, without a window
+//
+// as in the game, a wire may lead off the board or into a tile with no wire
+// back, and loops are allowed; all that counts is that every tile is linked
+// to the rest, a link being two wires that meet. Such a board always has a
+// spanning tree of links, so the solver looks for one: every tile keeps the
+// set of its rotations that are still possible, and every pair of neighbors
+// the state of the link between them in the tree: unknown, on or off. A
+// tile's rotations must have wires across its links that are on, and a link
+// is on once both tiles are sure to have wires across it, or off once either
+// can't or it would close a loop. A group of linked tiles that isn't the
+// whole board has to link to some other tile, so a group with no undecided
+// links left is a dead end, and a group with one left must use it.
+//
+// the tree uses two wire ends per link, and the board's spare ends are the
+// ones left pointing off the board or across links that are off, of which
+// there can't be more than the board has to spare. Every generated board is
+// a scrambled tree with none to spare, which makes it tight: every wire must
+// meet another and a loop can't happen. On boards that aren't tight, where
+// these rules are weaker, every link the board can't be connected without is
+// found and turned on too, but the search can still take far longer.
+//
+// when the rules stop making progress, each rotation still open is tried on
+// its own and dropped if the rules refute it, and only the tiles around what
+// that changed are tried again, until a pass refutes too few to be worth it.
+// Then the solver guesses a rotation for a tile with the fewest left, next
+// to what the last guess changed where it can, undoing everything it
+// deduced from a guess if it leads nowhere; keeping the guesses together
+// means a wrong one is found out before guesses elsewhere pile up on it, so
+// big boards take about linear time. With several
+// power stations, a board can be won without being connected into one
+// network, which the solver doesn't look for
+class BoardSolver {
+  static final byte UNKNOWN = 0;
+  static final byte ON = 1;
+  static final byte OFF = 2;
+
+  // what each entry of the trail restores
+  static final int DOMAIN = 0;
+  static final int LINK = 1;
+  static final int PARENT = 2;
+  static final int SIZE = 3;
+  static final int OPEN = 4;
+  static final int OPEN_LINKS = 5;
+  // probing stops once a pass over the tiles waiting to be probed rules out
+  // fewer than one rotation for every PROBE_YIELD tiles it probes
+  static final int PROBE_YIELD = 32;
+
+  int width;
+  int height;
+  // how many more wire ends the board has than a spanning tree uses, which
+  // a solution leaves pointing off the board or at links it doesn't use,
+  // and whether that's none
+  int slack;
+  boolean tight;
+  // the wires each tile had when the solver was given the board
+  byte[] masks;
+  // for each tile, bit k is set while rotating it k times is still possible
+  byte[] domains;
+  // the state of the link below (even) and to the right (odd) of each tile
+  byte[] links;
+  // the groups of tiles joined by links that are on; no path compression, so
+  // unions can be undone
+  int[] parent;
+  int[] size;
+  // for each group, how many sides of its tiles have undecided links, and
+  // those links' indices xored together, which is the one link left when
+  // there's only one
+  int[] open;
+  int[] openLinks;
+  // links some group has to use, waiting to be turned on
+  int[] forced;
+  int forcedSize;
+  // scratch space for forceBridges, only allocated once it is needed: when
+  // the search reached each tile, the earliest tile reachable from below it,
+  // the tiles on the search's path, and the next side of each tile to look
+  // at and the side the search came in from
+  int[] order;
+  int[] low;
+  int[] path;
+  byte[] nextDir;
+  byte[] upDir;
+  // every change since the start, as (what, index, old value) triples
+  int[] trail;
+  int trailSize;
+  // the tiles whose rotations need another look
+  int[] queue;
+  boolean[] queued;
+  int queueHead;
+  int queueSize;
+  // the tiles waiting to be probed, only allocated once settle needs them
+  int[] probes;
+  boolean[] probing;
+  int probeHead;
+  int probeSize;
+  // where pickTile starts looking when nothing changed near the last guess
+  int cursor;
+  // set once some solver sharing it has found a solution
+  AtomicBoolean stop;
+
+  // sets up a solver for the given board as it is now
+  BoardSolver(PackedBoard packed) {
+    this.width = packed.width;
+    this.height = packed.height;
+    int tiles = this.width * this.height;
+    this.masks = packed.masks.clone();
+    this.domains = new byte[tiles];
+    this.links = new byte[tiles * 2];
+    this.parent = new int[tiles];
+    this.size = new int[tiles];
+    this.open = new int[tiles];
+    this.openLinks = new int[tiles];
+    this.forced = new int[16];
+    this.trail = new int[3 * 1024];
+    this.queue = new int[tiles];
+    this.queued = new boolean[tiles];
+    this.stop = new AtomicBoolean(false);
+
+    int ends = 0;
+    for (int i = 0; i < tiles; i++) {
+      ends += Integer.bitCount(this.masks[i]);
+    }
+    this.slack = ends - 2 * (tiles - 1);
+    this.tight = this.slack == 0;
+
+    for (int i = 0; i < tiles; i++) {
+      int row = i / this.width;
+      int col = i - row * this.width;
+      int mask = this.masks[i];
+      int domain = 1;
+      int turned = mask;
+      for (int k = 1; k < 4; k++) {
+        turned = GamePiece.rotateMask(turned);
+        if (turned == mask) {
+          break;
+        }
+        domain |= 1 << k;
+      }
+      this.domains[i] = (byte) domain;
+      this.parent[i] = i;
+      this.size[i] = 1;
+      this.open[i] = (row > 0 ? 1 : 0) + (row < this.height - 1 ? 1 : 0) + (col > 0 ? 1 : 0)
+          + (col < this.width - 1 ? 1 : 0);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int link = this.linkIndex(i, dir);
+        if (link >= 0) {
+          this.openLinks[i] ^= link;
+        }
+      }
+      this.enqueue(i);
+    }
+  }
+
+  // sets up a solver for the given game as it is now
+  BoardSolver(LightEmAll game) {
+    this(new PackedBoard(game));
+  }
+
+  // copies another solver's state, so the copy can search on its own
+  BoardSolver(BoardSolver other) {
+    this.width = other.width;
+    this.height = other.height;
+    this.slack = other.slack;
+    this.tight = other.tight;
+    this.masks = other.masks;
+    this.domains = other.domains.clone();
+    this.links = other.links.clone();
+    this.parent = other.parent.clone();
+    this.size = other.size.clone();
+    this.open = other.open.clone();
+    this.openLinks = other.openLinks.clone();
+    this.forced = new int[16];
+    this.trail = new int[other.trail.length];
+    this.queue = new int[other.queue.length];
+    this.queued = other.queued.clone();
+    this.queueSize = other.queueSize - other.queueHead;
+    for (int i = 0; i < this.queueSize; i++) {
+      this.queue[i] = other.queue[(other.queueHead + i) % other.queue.length];
+    }
+    this.stop = other.stop;
+  }
+
+  // searches for a solution, returning whether there is one; the guesses made
+  // so far are kept on a stack of their own rather than the call stack
+  boolean solve() {
+    int[] guessTile = new int[16];
+    int[] guessLeft = new int[16];
+    int[] guessMark = new int[16];
+    int depth = 0;
+    boolean consistent = this.settle();
+
+    while (!this.stop.get()) {
+      if (consistent) {
+        int tile = this.pickTile(depth > 0 ? guessMark[depth - 1] : this.trailSize);
+        if (tile < 0) {
+          return true;
+        }
+        if (depth == guessTile.length) {
+          guessTile = Arrays.copyOf(guessTile, depth * 2);
+          guessLeft = Arrays.copyOf(guessLeft, depth * 2);
+          guessMark = Arrays.copyOf(guessMark, depth * 2);
+        }
+        guessTile[depth] = tile;
+        guessLeft[depth] = this.domains[tile];
+        guessMark[depth] = this.trailSize;
+        depth++;
+      }
+
+      // go back to the latest guess with a rotation left to try
+      while (depth > 0 && guessLeft[depth - 1] == 0) {
+        depth--;
+      }
+      if (depth == 0) {
+        return false;
+      }
+      this.undo(guessMark[depth - 1]);
+      int tile = guessTile[depth - 1];
+      int turn = guessLeft[depth - 1] & -guessLeft[depth - 1];
+      guessLeft[depth - 1] &= ~turn;
+      this.setDomain(tile, turn);
+      this.enqueue(tile);
+      consistent = this.deduce();
+    }
+    return false;
+  }
+
+  // searches for a solution, splitting the guesses for the first tile that
+  // needs one across the given pool; returns the solver that found a
+  // solution, or null if there is none
+  BoardSolver solveParallel(ForkJoinPool pool) {
+    if (!this.settle()) {
+      return null;
+    }
+    int tile = this.pickTile(this.trailSize);
+    if (tile < 0) {
+      return this;
+    }
+    return pool.invoke(new SolveTask(this, tile));
+  }
+
+  // applies the rules, then probes the tiles: rules out every rotation that
+  // leads straight to a contradiction, and probes again only the tiles next
+  // to what that changed. Probing goes in passes over the tiles waiting, and
+  // stops early once a pass rules out too little to be worth its cost,
+  // leaving the rest to the search; returns false if the board turned out
+  // to have no solution
+  boolean settle() {
+    if (!this.deduce()) {
+      return false;
+    }
+    int tiles = this.domains.length;
+    if (this.probes == null) {
+      this.probes = new int[tiles];
+      this.probing = new boolean[tiles];
+    }
+    for (int tile = 0; tile < tiles; tile++) {
+      this.enqueueProbe(tile);
+    }
+
+    while (this.probeHead < this.probeSize) {
+      int end = this.probeSize;
+      int probed = 0;
+      int ruledOut = 0;
+      while (this.probeHead < end) {
+        int tile = this.probes[this.probeHead++ % tiles];
+        this.probing[tile] = false;
+        if (Integer.bitCount(this.domains[tile]) > 1) {
+          probed++;
+          for (int turn = 1; turn < 16; turn <<= 1) {
+            if ((this.domains[tile] & turn) != 0 && !this.allows(tile, turn)) {
+              int mark = this.trailSize;
+              this.setDomain(tile, this.domains[tile] & ~turn);
+              this.enqueue(tile);
+              if (!this.deduce()) {
+                this.clearProbes();
+                return false;
+              }
+              this.probeChanges(mark);
+              ruledOut++;
+            }
+          }
+        }
+      }
+      if (ruledOut * PROBE_YIELD < probed) {
+        this.clearProbes();
+      }
+    }
+    this.clearProbes();
+    return true;
+  }
+
+  // adds the given tile to the tiles waiting to be probed, if it has more
+  // than one rotation left
+  void enqueueProbe(int tile) {
+    if (!this.probing[tile] && Integer.bitCount(this.domains[tile]) > 1) {
+      this.probing[tile] = true;
+      this.probes[this.probeSize++ % this.probes.length] = tile;
+    }
+  }
+
+  // queues for probing every tile whose rotations or links changed since
+  // the trail was the given size, and their neighbors
+  void probeChanges(int mark) {
+    for (int at = mark; at < this.trailSize; at += 3) {
+      int what = this.trail[at];
+      int index = this.trail[at + 1];
+      if (what == DOMAIN) {
+        this.enqueueProbe(index);
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if (this.linkIndex(index, dir) >= 0) {
+            this.enqueueProbe(this.neighborIndex(index, dir));
+          }
+        }
+      }
+      else if (what == LINK) {
+        this.enqueueProbe(index >> 1);
+        this.enqueueProbe((index & 1) != 0 ? (index >> 1) + 1 : (index >> 1) + this.width);
+      }
+    }
+  }
+
+  // forgets every tile waiting to be probed
+  void clearProbes() {
+    while (this.probeHead < this.probeSize) {
+      this.probing[this.probes[this.probeHead++ % this.probes.length]] = false;
+    }
+    this.probeHead = 0;
+    this.probeSize = 0;
+  }
+
+  // does fixing the given tile to the given rotation survive the rules?
+  // leaves everything as it was either way
+  boolean allows(int tile, int turn) {
+    int mark = this.trailSize;
+    this.setDomain(tile, turn);
+    this.enqueue(tile);
+    boolean consistent = this.deduce();
+    this.undo(mark);
+    return consistent;
+  }
+
+  // applies the rules and, on a board that isn't tight, turns on every link
+  // the board can no longer be connected without and drops the rotations
+  // that leave too many wire ends unused, until nothing changes; returns
+  // false if the board turned out to have no solution
+  boolean deduce() {
+    while (this.propagate()) {
+      if (!this.forceBridges() || !this.spendSlack()) {
+        this.clearQueue();
+        return false;
+      }
+      if (this.forcedSize == 0 && this.queueHead == this.queueSize) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // counts the fewest wire ends each tile can leave unused, pointing off the
+  // board or across links that are off, and drops the rotations that would
+  // leave more unused than the board has to spare; returns false if even the
+  // fewest are too many. Does nothing on a tight board, where fits already
+  // allows none
+  boolean spendSlack() {
+    if (this.tight) {
+      return true;
+    }
+    int tiles = this.domains.length;
+    int spent = 0;
+    for (int tile = 0; tile < tiles; tile++) {
+      spent += this.fewestUnused(tile);
+    }
+    if (spent > this.slack) {
+      return false;
+    }
+    for (int tile = 0; tile < tiles; tile++) {
+      int domain = this.domains[tile];
+      if (Integer.bitCount(domain) > 1) {
+        int blocked = this.blocked(tile);
+        int most = this.fewestUnused(tile) + this.slack - spent;
+        int kept = domain;
+        for (int turn = 0; turn < 4; turn++) {
+          if ((domain & (1 << turn)) != 0
+              && Integer.bitCount(this.turned(tile, turn) & blocked) > most) {
+            kept &= ~(1 << turn);
+          }
+        }
+        if (kept != domain) {
+          this.setDomain(tile, kept);
+          this.enqueue(tile);
+        }
+      }
+    }
+    return true;
+  }
+
+  // returns the sides of the given tile that can't be used: off the board or
+  // across links that are off
+  int blocked(int tile) {
+    int blocked = 0;
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      int link = this.linkIndex(tile, dir);
+      if (link < 0 || this.links[link] == OFF) {
+        blocked |= dir;
+      }
+    }
+    return blocked;
+  }
+
+  // returns the fewest wire ends any rotation left for the given tile points
+  // at sides that can't be used
+  int fewestUnused(int tile) {
+    int blocked = this.blocked(tile);
+    int fewest = 4;
+    for (int turn = 0; turn < 4; turn++) {
+      if ((this.domains[tile] & (1 << turn)) != 0) {
+        fewest = Math.min(fewest, Integer.bitCount(this.turned(tile, turn) & blocked));
+      }
+    }
+    return fewest;
+  }
+
+  // searches the links that aren't off depth first from the first tile,
+  // queueing every undecided link that's the only way between two parts of
+  // the board to be turned on; returns false if some tile can't be reached.
+  // Does nothing on a tight board, where the rules are strong enough
+  boolean forceBridges() {
+    if (this.tight) {
+      return true;
+    }
+    int tiles = this.domains.length;
+    if (this.order == null) {
+      this.order = new int[tiles];
+      this.low = new int[tiles];
+      this.path = new int[tiles];
+      this.nextDir = new byte[tiles];
+      this.upDir = new byte[tiles];
+    }
+    Arrays.fill(this.order, 0);
+    int visited = 1;
+    int depth = 0;
+    this.order[0] = 1;
+    this.low[0] = 1;
+    this.nextDir[0] = GamePiece.TOP;
+    this.upDir[0] = 0;
+    this.path[depth++] = 0;
+    while (depth > 0) {
+      int tile = this.path[depth - 1];
+      int dir = this.nextDir[tile];
+      if (dir <= GamePiece.LEFT) {
+        this.nextDir[tile] = (byte) (dir << 1);
+        int link = this.linkIndex(tile, dir);
+        if (link >= 0 && this.links[link] != OFF && dir != this.upDir[tile]) {
+          int other = this.neighborIndex(tile, dir);
+          if (this.order[other] == 0) {
+            visited++;
+            this.order[other] = visited;
+            this.low[other] = visited;
+            this.nextDir[other] = GamePiece.TOP;
+            this.upDir[other] = (byte) GamePiece.opposite(dir);
+            this.path[depth++] = other;
+          }
+          else {
+            this.low[tile] = Math.min(this.low[tile], this.order[other]);
+          }
+        }
+      }
+      else {
+        depth--;
+        if (depth > 0) {
+          int up = this.path[depth - 1];
+          this.low[up] = Math.min(this.low[up], this.low[tile]);
+          int link = this.linkIndex(tile, this.upDir[tile]);
+          if (this.low[tile] > this.order[up] && this.links[link] == UNKNOWN) {
+            if (this.forcedSize == this.forced.length) {
+              this.forced = Arrays.copyOf(this.forced, this.forcedSize * 2);
+            }
+            this.forced[this.forcedSize++] = link;
+          }
+        }
+      }
+    }
+    return visited == tiles;
+  }
+
+  // applies the rules until nothing changes, returning false if the board
+  // turned out to have no solution
+  boolean propagate() {
+    while (this.queueHead < this.queueSize || this.forcedSize > 0) {
+      if (this.forcedSize > 0) {
+        int link = this.forced[--this.forcedSize];
+        int tile = link >> 1;
+        int other = (link & 1) != 0 ? tile + 1 : tile + this.width;
+        if (this.links[link] == UNKNOWN && !this.setLink(link, tile, other, ON)) {
+          this.clearQueue();
+          return false;
+        }
+        continue;
+      }
+      int tile = this.queue[this.queueHead++ % this.queue.length];
+      this.queued[tile] = false;
+      if (!this.revise(tile)) {
+        this.clearQueue();
+        return false;
+      }
+    }
+    this.clearQueue();
+    return true;
+  }
+
+  // narrows the rotations of the given tile down to the ones its links allow,
+  // then decides any link all of them agree on
+  boolean revise(int tile) {
+    int domain = this.domains[tile];
+    int all = 0xF;
+    int any = 0;
+    int allowed = 0;
+    for (int turn = 0; turn < 4; turn++) {
+      if ((domain & (1 << turn)) != 0) {
+        int mask = this.turned(tile, turn);
+        if (this.fits(tile, mask)) {
+          allowed |= 1 << turn;
+          all &= mask;
+          any |= mask;
+        }
+      }
+    }
+    if (allowed == 0) {
+      return false;
+    }
+    if (allowed != domain) {
+      this.setDomain(tile, allowed);
+    }
+
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      int link = this.linkIndex(tile, dir);
+      if (link >= 0 && this.links[link] == UNKNOWN) {
+        int other = this.neighborIndex(tile, dir);
+        int back = GamePiece.opposite(dir);
+        boolean joined = this.find(tile) == this.find(other);
+        if ((all & dir) != 0
+            && (this.tight || !joined && (this.certain(other) & back) != 0)) {
+          if (!this.setLink(link, tile, other, ON)) {
+            return false;
+          }
+        }
+        else if ((any & dir) == 0 || joined
+            || !this.tight && (this.possible(other) & back) == 0) {
+          if (!this.setLink(link, tile, other, OFF)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // can the given tile have the given wires, as far as its links go? A wire
+  // across a link that's off, or off the board, only fits on a board that
+  // isn't tight
+  boolean fits(int tile, int mask) {
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      int link = this.linkIndex(tile, dir);
+      byte state = link < 0 ? OFF : this.links[link];
+      if ((state == ON && (mask & dir) == 0)
+          || (this.tight && state == OFF && (mask & dir) != 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // returns the wires the given tile has whichever rotation it's left with
+  int certain(int tile) {
+    int all = 0xF;
+    for (int turn = 0; turn < 4; turn++) {
+      if ((this.domains[tile] & (1 << turn)) != 0) {
+        all &= this.turned(tile, turn);
+      }
+    }
+    return all;
+  }
+
+  // returns the wires the given tile has in some rotation it's left with
+  int possible(int tile) {
+    int any = 0;
+    for (int turn = 0; turn < 4; turn++) {
+      if ((this.domains[tile] & (1 << turn)) != 0) {
+        any |= this.turned(tile, turn);
+      }
+    }
+    return any;
+  }
+
+  // decides the given link between two tiles, returning false if that leaves
+  // a group of tiles cut off from the rest of the board, or on a tight board
+  // closes a loop
+  boolean setLink(int link, int a, int b, byte state) {
+    this.record(LINK, link, this.links[link]);
+    this.links[link] = state;
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    this.setOpen(rootA, this.open[rootA] - 1, this.openLinks[rootA] ^ link);
+    this.setOpen(rootB, this.open[rootB] - 1, this.openLinks[rootB] ^ link);
+    this.enqueue(a);
+    this.enqueue(b);
+
+    if (state == ON && rootA != rootB) {
+      if (this.size[rootA] < this.size[rootB]) {
+        int swap = rootA;
+        rootA = rootB;
+        rootB = swap;
+      }
+      this.record(PARENT, rootB, this.parent[rootB]);
+      this.parent[rootB] = rootA;
+      this.record(SIZE, rootA, this.size[rootA]);
+      this.size[rootA] += this.size[rootB];
+      this.setOpen(rootA, this.open[rootA] + this.open[rootB],
+          this.openLinks[rootA] ^ this.openLinks[rootB]);
+      return this.check(rootA);
+    }
+    if (state == ON && this.tight) {
+      return false;
+    }
+    return this.check(rootA) && this.check(rootB);
+  }
+
+  // returns false if the given group is finished without covering the whole
+  // board, and otherwise, if it has one undecided link left, makes it use it
+  boolean check(int root) {
+    if (this.size[root] == this.domains.length || this.open[root] > 1) {
+      return true;
+    }
+    if (this.open[root] == 0) {
+      return false;
+    }
+    if (this.forcedSize == this.forced.length) {
+      this.forced = Arrays.copyOf(this.forced, this.forcedSize * 2);
+    }
+    this.forced[this.forcedSize++] = this.openLinks[root];
+    return true;
+  }
+
+  // returns the tile to guess next, or -1 if every tile is down to one
+  // rotation or the links that are on already connect the whole board, when
+  // any rotation left for each tile keeps them on. Prefers the tiles that
+  // changed since the trail was the given size, so the search finishes one
+  // part of the board before moving on and a wrong guess is found out before
+  // guesses elsewhere pile up on top of it; among those, or among all tiles
+  // from the cursor on if none is left open, the first with the fewest
+  // rotations left, on a board that isn't tight with the fewest undecided
+  // links among those
+  int pickTile(int mark) {
+    if (this.size[this.find(0)] == this.domains.length) {
+      return -1;
+    }
+    int best = -1;
+    int fewest = 100;
+    for (int at = mark; at < this.trailSize && fewest > 16; at += 3) {
+      if (this.trail[at] == DOMAIN) {
+        int tile = this.trail[at + 1];
+        if (this.score(tile) < fewest) {
+          best = tile;
+          fewest = this.score(tile);
+        }
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if (this.linkIndex(tile, dir) >= 0
+              && this.score(this.neighborIndex(tile, dir)) < fewest) {
+            best = this.neighborIndex(tile, dir);
+            fewest = this.score(best);
+          }
+        }
+      }
+    }
+    if (best >= 0) {
+      return best;
+    }
+
+    int tiles = this.domains.length;
+    for (int i = 0; i < tiles && fewest > 16; i++) {
+      int tile = (this.cursor + i) % tiles;
+      int score = this.score(tile);
+      if (score < fewest) {
+        best = tile;
+        fewest = score;
+      }
+    }
+    if (best >= 0) {
+      this.cursor = best;
+    }
+    return best;
+  }
+
+  // returns how good a guess the given tile makes, lower being better: 8 for
+  // each rotation left, plus one for each undecided link on a board that
+  // isn't tight, or 100 if it's down to one rotation
+  int score(int tile) {
+    int count = Integer.bitCount(this.domains[tile]);
+    if (count < 2) {
+      return 100;
+    }
+    int score = count * 8;
+    if (!this.tight) {
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int link = this.linkIndex(tile, dir);
+        if (link >= 0 && this.links[link] == UNKNOWN) {
+          score++;
+        }
+      }
+    }
+    return score;
+  }
+
+  // returns how many times each tile has to be turned clockwise to solve the
+  // board, once solve has succeeded, taking the first rotation left for
+  // each
+  byte[] turns() {
+    byte[] turns = new byte[this.domains.length];
+    for (int i = 0; i < turns.length; i++) {
+      turns[i] = (byte) Integer.numberOfTrailingZeros(this.domains[i]);
+    }
+    return turns;
+  }
+
+  // returns the wires of each tile once the board is solved
+  byte[] solution() {
+    byte[] solved = new byte[this.domains.length];
+    for (int i = 0; i < solved.length; i++) {
+      solved[i] = (byte) this.turned(i, Integer.numberOfTrailingZeros(this.domains[i]));
+    }
+    return solved;
+  }
+
+  // returns the wires of the given tile after turning it the given number
+  // of times
+  int turned(int tile, int turn) {
+    int mask = this.masks[tile];
+    for (int i = 0; i < turn; i++) {
+      mask = GamePiece.rotateMask(mask);
+    }
+    return mask;
+  }
+
+  // returns the link on the given side of the given tile, or -1 if that side
+  // is the edge of the board
+  int linkIndex(int tile, int dir) {
+    int row = tile / this.width;
+    int col = tile - row * this.width;
+    if (dir == GamePiece.TOP) {
+      return row > 0 ? (tile - this.width) * 2 : -1;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return col < this.width - 1 ? tile * 2 + 1 : -1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return row < this.height - 1 ? tile * 2 : -1;
+    }
+    else {
+      return col > 0 ? (tile - 1) * 2 + 1 : -1;
+    }
+  }
+
+  // returns the tile next to the given one in the given direction
+  int neighborIndex(int tile, int dir) {
+    if (dir == GamePiece.TOP) {
+      return tile - this.width;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return tile + 1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return tile + this.width;
+    }
+    else {
+      return tile - 1;
+    }
+  }
+
+  // finds the group the given tile belongs to
+  int find(int tile) {
+    while (this.parent[tile] != tile) {
+      tile = this.parent[tile];
+    }
+    return tile;
+  }
+
+  // narrows the given tile down to the given rotations
+  void setDomain(int tile, int domain) {
+    this.record(DOMAIN, tile, this.domains[tile]);
+    this.domains[tile] = (byte) domain;
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if (this.linkIndex(tile, dir) >= 0) {
+        this.enqueue(this.neighborIndex(tile, dir));
+      }
+    }
+  }
+
+  // sets how many undecided sides the given group has, and which
+  void setOpen(int root, int count, int links) {
+    this.record(OPEN, root, this.open[root]);
+    this.open[root] = count;
+    this.record(OPEN_LINKS, root, this.openLinks[root]);
+    this.openLinks[root] = links;
+  }
+
+  // remembers a value about to be overwritten so undo can put it back
+  void record(int what, int index, int old) {
+    if (this.trailSize + 3 > this.trail.length) {
+      this.trail = Arrays.copyOf(this.trail, this.trail.length * 2);
+    }
+    this.trail[this.trailSize++] = what;
+    this.trail[this.trailSize++] = index;
+    this.trail[this.trailSize++] = old;
+  }
+
+  // puts back everything changed since the trail was the given size
+  void undo(int mark) {
+    while (this.trailSize > mark) {
+      int old = this.trail[--this.trailSize];
+      int index = this.trail[--this.trailSize];
+      int what = this.trail[--this.trailSize];
+      if (what == DOMAIN) {
+        this.domains[index] = (byte) old;
+      }
+      else if (what == LINK) {
+        this.links[index] = (byte) old;
+      }
+      else if (what == PARENT) {
+        this.parent[index] = old;
+      }
+      else if (what == SIZE) {
+        this.size[index] = old;
+      }
+      else if (what == OPEN) {
+        this.open[index] = old;
+      }
+      else {
+        this.openLinks[index] = old;
+      }
+    }
+  }
+
+  // adds the given tile to the tiles that need another look
+  void enqueue(int tile) {
+    if (!this.queued[tile]) {
+      this.queued[tile] = true;
+      this.queue[this.queueSize++ % this.queue.length] = tile;
+    }
+  }
+
+  // forgets every tile waiting for another look
+  void clearQueue() {
+    while (this.queueHead < this.queueSize) {
+      this.queued[this.queue[this.queueHead++ % this.queue.length]] = false;
+    }
+    this.queueHead = 0;
+    this.queueSize = 0;
+    this.forcedSize = 0;
+  }
+}
+
+// tries one rotation of a tile per copy of a solver, in parallel
+class SolveTask extends RecursiveTask<BoardSolver> {
+  private static final long serialVersionUID = 1L;
+
+  BoardSolver solver;
+  int tile;
+
+  SolveTask(BoardSolver solver, int tile) {
+    this.solver = solver;
+    this.tile = tile;
+  }
+
+  // searches every rotation left for the tile at once, returning the first
+  // solver to find a solution; without a tile, just searches
+  protected BoardSolver compute() {
+    if (this.tile < 0) {
+      if (this.solver.solve()) {
+        this.solver.stop.set(true);
+        return this.solver;
+      }
+      return null;
+    }
+
+    int domain = this.solver.domains[this.tile];
+    ArrayList<SolveTask> branches = new ArrayList<SolveTask>();
+    for (int turn = 0; turn < 4; turn++) {
+      if ((domain & (1 << turn)) != 0) {
+        BoardSolver branch = new BoardSolver(this.solver);
+        branch.setDomain(this.tile, 1 << turn);
+        branch.enqueue(this.tile);
+        branches.add(new SolveTask(branch, -1));
+      }
+    }
+    invokeAll(branches);
+    for (SolveTask branch : branches) {
+      BoardSolver found = branch.join();
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+}
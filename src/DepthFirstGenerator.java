@@ -0,0 +1,50 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// randomized depth-first search: from a random tile, keeps wiring the latest
+// tile to a random neighbor not yet in the tree, backing up along the path
+// when it's boxed in
+//
+// the path is kept on an explicit stack, since it can run through most of the
+// board, which with a bitset of visited tiles takes a little over 4 bytes of
+// scratch space per tile. Every tile is pushed and popped once. Makes long
+// winding corridors, so the board has few junctions and a huge diameter
+class DepthFirstGenerator implements BoardGenerator {
+  // builds the tree with a depth-first search
+  public byte[] spanningTree(int width, int height, Random rand) {
+    SplittableRandom random = new SplittableRandom(rand.nextLong());
+    int tiles = width * height;
+    byte[] masks = new byte[tiles];
+    long[] visited = new long[(tiles + 63) >> 6];
+    int[] stack = new int[tiles];
+    int size = 0;
+
+    int start = random.nextInt(tiles);
+    visited[start >> 6] |= 1L << start;
+    stack[size++] = start;
+    while (size > 0) {
+      int tile = stack[size - 1];
+      int open = 0;
+      int dirs = BoardGenerator.onBoard(tile, width, height);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((dirs & dir) != 0) {
+          int next = BoardGenerator.neighbor(tile, width, dir);
+          if ((visited[next >> 6] & (1L << next)) == 0) {
+            open |= dir;
+          }
+        }
+      }
+      if (open == 0) {
+        size--;
+      }
+      else {
+        int dir = BoardGenerator.pick(open, random);
+        int next = BoardGenerator.neighbor(tile, width, dir);
+        BoardGenerator.connect(masks, width, tile, dir);
+        visited[next >> 6] |= 1L << next;
+        stack[size++] = next;
+      }
+    }
+    return masks;
+  }
+}
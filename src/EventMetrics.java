@@ -0,0 +1,198 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+// latency histograms for the game's event handlers and the phases inside
+// them, plus how many frames had more work than fits between two ticks
+//
+// recording is off until enable is called, and costs one branch per event
+// while it is off. Once on, every handler and phase adds its time in
+// nanoseconds to a histogram with one bucket per power of two, so recording
+// never allocates; the handlers run one at a time on the thread delivering
+// the game's events, so the counters aren't synchronized. Each tick ends a
+// frame, and a frame whose clicks, key presses and drawing took longer than
+// the tick interval counts as an overrun. The numbers can be printed as text
+// or JSON, and every so often from onTick if a dump interval is set
+class EventMetrics {
+  static final int CLICK = 0;
+  static final int KEY = 1;
+  static final int ROTATE = 2;
+  static final int UPDATE_POWER = 3;
+  static final int CHECK_WIN = 4;
+  static final int MAKE_SCENE = 5;
+  static final int TICK = 6;
+  static final String[] NAMES = new String[] {"onMouseClicked", "onKeyEvent", "rotateAt",
+      "updatePower", "checkWin", "makeScene", "onTick"};
+  // whether the event's time counts towards the frame's work; the phases
+  // inside a handler are already counted by the handler
+  static final boolean[] FRAME_WORK = new boolean[] {true, true, false, false, false, true,
+      true};
+  // bucket b holds times from 2^(b-1) up to 2^b - 1 nanoseconds
+  static final int BUCKETS = 64;
+
+  static boolean enabled;
+  static long tickNanos = 100_000_000L;
+  static long dumpNanos;
+  static PrintStream dumpTo = System.out;
+
+  static final long[][] counts = new long[NAMES.length][BUCKETS];
+  static final long[] totals = new long[NAMES.length];
+  static final long[] maxima = new long[NAMES.length];
+  static long frames;
+  static long overruns;
+  static long frameWork;
+  static long lastDump;
+
+  // starts recording, with the given number of seconds between ticks (the
+  // speed given to bigBang), printing a text dump every dumpSeconds seconds
+  // unless that is 0
+  static void enable(double tickSeconds, double dumpSeconds) {
+    EventMetrics.reset();
+    EventMetrics.tickNanos = (long) (tickSeconds * 1e9);
+    EventMetrics.dumpNanos = (long) (dumpSeconds * 1e9);
+    EventMetrics.lastDump = System.nanoTime();
+    EventMetrics.enabled = true;
+  }
+
+  // stops recording, keeping what has been recorded so far
+  static void disable() {
+    EventMetrics.enabled = false;
+  }
+
+  // forgets everything recorded so far
+  static void reset() {
+    for (int event = 0; event < NAMES.length; event++) {
+      Arrays.fill(counts[event], 0L);
+      totals[event] = 0;
+      maxima[event] = 0;
+    }
+    frames = 0;
+    overruns = 0;
+    frameWork = 0;
+  }
+
+  // returns the time an event starts, or 0 if nothing is being recorded
+  static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  // records an event that started at the given time, as returned by start
+  static void record(int event, long start) {
+    if (start != 0) {
+      EventMetrics.add(event, System.nanoTime() - start);
+    }
+  }
+
+  // adds an event that took the given number of nanoseconds
+  static void add(int event, long nanos) {
+    counts[event][EventMetrics.bucket(nanos)]++;
+    totals[event] += nanos;
+    maxima[event] = Math.max(maxima[event], nanos);
+    if (FRAME_WORK[event]) {
+      frameWork += nanos;
+    }
+  }
+
+  // returns the bucket a time in nanoseconds falls in
+  static int bucket(long nanos) {
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+  }
+
+  // ends the current frame, counting it as an overrun if its work took
+  // longer than a tick, and prints a dump if one is due
+  static void tick() {
+    if (!enabled) {
+      return;
+    }
+    frames++;
+    if (frameWork > tickNanos) {
+      overruns++;
+    }
+    frameWork = 0;
+
+    long now = System.nanoTime();
+    if (dumpNanos > 0 && now - lastDump >= dumpNanos) {
+      lastDump = now;
+      dumpTo.print(EventMetrics.text());
+    }
+  }
+
+  // returns how many times the given event has been recorded
+  static long count(int event) {
+    long count = 0;
+    for (long n : counts[event]) {
+      count += n;
+    }
+    return count;
+  }
+
+  // returns the smallest time, as the top of its bucket, that at least the
+  // given fraction of the given event's recordings took no longer than
+  static long percentile(int event, double fraction) {
+    long count = EventMetrics.count(event);
+    if (count == 0) {
+      return 0;
+    }
+    long wanted = Math.max(1, (long) Math.ceil(count * fraction));
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += counts[event][b];
+      if (seen >= wanted) {
+        return Math.min(maxima[event], b == 0 ? 0 : (1L << b) - 1);
+      }
+    }
+    return maxima[event];
+  }
+
+  // returns the recorded numbers as a table, one line per event with times
+  // in microseconds
+  static String text() {
+    StringBuilder out = new StringBuilder();
+    out.append(String.format("%-16s %10s %10s %10s %10s %10s%n", "event", "count", "mean us",
+        "p50 us", "p99 us", "max us"));
+    for (int event = 0; event < NAMES.length; event++) {
+      long count = EventMetrics.count(event);
+      out.append(String.format("%-16s %10d %10.1f %10.1f %10.1f %10.1f%n", NAMES[event], count,
+          count == 0 ? 0.0 : totals[event] / 1e3 / count,
+          EventMetrics.percentile(event, 0.5) / 1e3, EventMetrics.percentile(event, 0.99) / 1e3,
+          maxima[event] / 1e3));
+    }
+    out.append(String.format("frames %d, overruns %d (tick %.3f s)%n", frames, overruns,
+        tickNanos / 1e9));
+    return out.toString();
+  }
+
+  // returns the recorded numbers as a JSON object, with times in
+  // nanoseconds and each histogram as its bucket counts
+  static String json() {
+    StringBuilder out = new StringBuilder();
+    out.append("{\"tickNanos\":").append(tickNanos);
+    out.append(",\"frames\":").append(frames);
+    out.append(",\"overruns\":").append(overruns);
+    out.append(",\"events\":{");
+    for (int event = 0; event < NAMES.length; event++) {
+      if (event > 0) {
+        out.append(',');
+      }
+      out.append('"').append(NAMES[event]).append("\":{");
+      out.append("\"count\":").append(EventMetrics.count(event));
+      out.append(",\"totalNanos\":").append(totals[event]);
+      out.append(",\"maxNanos\":").append(maxima[event]);
+      out.append(",\"p50Nanos\":").append(EventMetrics.percentile(event, 0.5));
+      out.append(",\"p99Nanos\":").append(EventMetrics.percentile(event, 0.99));
+      out.append(",\"buckets\":[");
+      int last = BUCKETS - 1;
+      while (last > 0 && counts[event][last] == 0) {
+        last--;
+      }
+      for (int b = 0; b <= last; b++) {
+        if (b > 0) {
+          out.append(',');
+        }
+        out.append(counts[event][b]);
+      }
+      out.append("]}");
+    }
+    out.append("}}");
+    return out.toString();
+  }
+}
@@ -0,0 +1,141 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+import javalib.worldimages.*;
+
+// represents a single tile in the LightEmALl game
+class GamePiece {
+  int row;
+  int col;
+  public boolean left;
+  public boolean right;
+  public boolean top;
+  public boolean bottom;
+  public boolean powerStation;
+  public boolean powered;
+
+  // the bits of a connection mask, clockwise from the top
+  static final int TOP = 1;
+  static final int RIGHT = 2;
+  static final int BOTTOM = 4;
+  static final int LEFT = 8;
+  // how many clockwise quarter turns take the first mask to the second,
+  // indexed by first * 16 + second, or -1 if no number of turns does
+  static final byte[] TURNS = GamePiece.turnsTable();
+
+  GamePiece(int row, int col) {
+    this.row = row;
+    this.col = col;
+    this.left = false;
+    this.right = false;
+    this.top = false;
+    this.bottom = false;
+    this.powerStation = false;
+    this.powered = false;
+  }
+
+  // draws a single GamePiece as a tile
+  WorldImage tileImage(int size, int wireWidth, Color wireColor, boolean hasPowerStation) {
+    return GamePiece.drawTile(this.mask(), size, wireWidth, wireColor, hasPowerStation);
+  }
+
+  // draws a tile with the wires in the given connection mask
+  static WorldImage drawTile(int mask, int size, int wireWidth, Color wireColor,
+      boolean hasPowerStation) {
+    WorldImage image = new OverlayImage(
+        new RectangleImage(wireWidth, wireWidth, OutlineMode.SOLID, wireColor),
+        new OverlayImage(new RectangleImage(size, size, OutlineMode.OUTLINE, Color.BLACK),
+            new RectangleImage(size, size, OutlineMode.SOLID, Color.DARK_GRAY)));
+    WorldImage vWire = new RectangleImage(wireWidth, (size + 1) / 2, OutlineMode.SOLID, wireColor);
+    WorldImage hWire = new RectangleImage((size + 1) / 2, wireWidth, OutlineMode.SOLID, wireColor);
+
+    if ((mask & TOP) != 0) {
+      image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.TOP, vWire, 0, 0, image);
+    }
+    if ((mask & RIGHT) != 0) {
+      image = new OverlayOffsetAlign(AlignModeX.RIGHT, AlignModeY.MIDDLE, hWire, 0, 0, image);
+    }
+    if ((mask & BOTTOM) != 0) {
+      image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.BOTTOM, vWire, 0, 0, image);
+    }
+    if ((mask & LEFT) != 0) {
+      image = new OverlayOffsetAlign(AlignModeX.LEFT, AlignModeY.MIDDLE, hWire, 0, 0, image);
+    }
+    if (hasPowerStation) {
+      image = new OverlayImage(
+          new OverlayImage(new StarImage(size / 3, 7, OutlineMode.OUTLINE, new Color(255, 128, 0)),
+              new StarImage(size / 3, 7, OutlineMode.SOLID, new Color(0, 255, 255))),
+          image);
+    }
+    return image;
+  }
+
+  // returns the plain cells of the given size standing in for unpowered
+  // tiles, powered tiles and the power station, in that order
+  static WorldImage[] drawCells(int size) {
+    return GamePiece.drawCells(size, Color.DARK_GRAY, Color.YELLOW);
+  }
+
+  // returns the plain cells of the given size standing in for tiles in each
+  // of the given colors, followed by the one for the power station
+  static WorldImage[] drawCells(int size, Color... colors) {
+    WorldImage[] cells = new WorldImage[colors.length + 1];
+    for (int i = 0; i < colors.length; i++) {
+      cells[i] = new RectangleImage(size, size, OutlineMode.SOLID, colors[i]);
+    }
+    cells[colors.length] = new RectangleImage(size, size, OutlineMode.SOLID,
+        new Color(0, 255, 255));
+    return cells;
+  }
+
+  // rotates the GamePiece tile clockwise if it is clicked
+  void rotate() {
+    this.setMask(GamePiece.rotateMask(this.mask()));
+  }
+
+  // returns the wires of this tile as a connection mask
+  int mask() {
+    return (this.top ? TOP : 0) | (this.right ? RIGHT : 0) | (this.bottom ? BOTTOM : 0)
+        | (this.left ? LEFT : 0);
+  }
+
+  // sets the wires of this tile from the given connection mask
+  void setMask(int mask) {
+    this.top = (mask & TOP) != 0;
+    this.right = (mask & RIGHT) != 0;
+    this.bottom = (mask & BOTTOM) != 0;
+    this.left = (mask & LEFT) != 0;
+  }
+
+  // returns the given connection mask turned a quarter clockwise
+  static int rotateMask(int mask) {
+    return ((mask << 1) | (mask >> 3)) & 0xF;
+  }
+
+  // returns the direction opposite the given one
+  static int opposite(int dir) {
+    return ((dir << 2) | (dir >> 2)) & 0xF;
+  }
+
+  // returns how many clockwise quarter turns take the first mask to the
+  // second, or -1 if no number of turns does
+  static int turns(int from, int to) {
+    return TURNS[from << 4 | to];
+  }
+
+  // builds TURNS
+  static byte[] turnsTable() {
+    byte[] table = new byte[256];
+    Arrays.fill(table, (byte) -1);
+    for (int from = 0; from < 16; from++) {
+      int mask = from;
+      for (int turns = 0; turns < 4; turns++) {
+        if (table[from << 4 | mask] < 0) {
+          table[from << 4 | mask] = (byte) turns;
+        }
+        mask = GamePiece.rotateMask(mask);
+      }
+    }
+    return table;
+  }
+}
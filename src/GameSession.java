@@ -0,0 +1,123 @@
+// one game hosted by a SessionHost, and the commands waiting for it
+class GameSession {
+  // what post returns: queued with a task already on its way, queued with a
+  // task needed to run it, or not queued
+  static final int QUEUED = 0;
+  static final int SCHEDULE = 1;
+  static final int FULL = 2;
+
+  PackedBoard board;
+  int station;
+  // a ring of waiting commands, head being the next to run
+  int[] mailbox;
+  int head;
+  int count;
+  boolean scheduled;
+
+  // starts a session on a copy of the given board
+  GameSession(PackedBoard template) {
+    this.board = GameSession.copy(template);
+    this.station = 0;
+    while (this.station < this.board.masks.length - 1
+        && !this.board.isStation(this.station)) {
+      this.station++;
+    }
+    this.mailbox = new int[4];
+  }
+
+  // returns a copy of the given board that can be changed freely, keeping
+  // track of where its power comes from
+  static PackedBoard copy(PackedBoard template) {
+    PackedBoard board = new PackedBoard(template.width, template.height);
+    System.arraycopy(template.masks, 0, board.masks, 0, board.masks.length);
+    System.arraycopy(template.powered, 0, board.powered, 0, board.powered.length);
+    System.arraycopy(template.stations, 0, board.stations, 0, board.stations.length);
+    board.poweredCount = template.poweredCount;
+    if (template.parents != null) {
+      board.parents = template.parents.clone();
+    }
+    else {
+      board.trackPower();
+      board.stack = null;
+    }
+    return board;
+  }
+
+  // queues the given command, saying whether a task has to be started to run
+  // it or whether the mailbox was full
+  synchronized int post(int command) {
+    if (this.count == SessionHost.MAILBOX_LIMIT) {
+      return FULL;
+    }
+    if (this.count == this.mailbox.length) {
+      int[] bigger = new int[this.mailbox.length * 2];
+      for (int i = 0; i < this.count; i++) {
+        bigger[i] = this.mailbox[(this.head + i) % this.mailbox.length];
+      }
+      this.mailbox = bigger;
+      this.head = 0;
+    }
+    this.mailbox[(this.head + this.count) % this.mailbox.length] = command;
+    this.count++;
+    if (this.scheduled) {
+      return QUEUED;
+    }
+    this.scheduled = true;
+    return SCHEDULE;
+  }
+
+  // returns the next waiting command, or -1 once there are none, in which
+  // case the session counts as no longer scheduled
+  synchronized int take() {
+    if (this.count == 0) {
+      this.scheduled = false;
+      return -1;
+    }
+    int command = this.mailbox[this.head];
+    this.head = (this.head + 1) % this.mailbox.length;
+    this.count--;
+    return command;
+  }
+
+  // keeps the session scheduled if it still has commands, returning whether
+  // a task has to be started for them
+  synchronized boolean reschedule() {
+    if (this.count == 0) {
+      this.scheduled = false;
+    }
+    return this.scheduled;
+  }
+
+  // carries out the given command, using the given scratch arrays to bring
+  // the power up to date, and returns the reply
+  int run(int command, int[] stack, int[] cut, SessionHost host) {
+    int argument = command & SessionHost.ARGUMENT;
+    this.board.stack = stack;
+    this.board.cut = cut;
+    switch (command & SessionHost.OPCODE) {
+      case SessionHost.ROTATE:
+        if (argument < this.board.masks.length) {
+          this.board.rotateAt(argument);
+        }
+        break;
+      case SessionHost.MOVE:
+        if ((this.board.linksAt(this.station) & argument) != 0
+            && Integer.bitCount(argument) == 1) {
+          int to = this.board.neighborIndex(this.station, argument);
+          this.board.moveStation(this.station, to);
+          this.station = to;
+        }
+        break;
+      case SessionHost.NEW:
+        this.board = GameSession.copy(host.template(this.board.width, this.board.height,
+            argument));
+        this.station = 0;
+        break;
+      default:
+        break;
+    }
+    this.board.stack = null;
+    this.board.cut = null;
+    return this.board.poweredCount | (this.board.allPowered() ? SessionHost.WON : 0);
+  }
+}
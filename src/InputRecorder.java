@@ -0,0 +1,167 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// records every click and key press a game gets, along with the game as it
+// was when recording started, so InputReplay can play the session back
+//
+// each event is packed into one long and kept in a fixed buffer that is only
+// written out when it fills up, so recording an event doesn't allocate or
+// touch the disk. The recording starts with a header (magic, version, width,
+// height, seed, the generator's class name and the number of stations), then
+// the game's state: every tile's mask, the powered tiles as a bitset and
+// whether they're up to date, the stations' tiles in order and which one is
+// selected, the solution if it's known, the lighting radius, the
+// camera, the modes that are on and the undo limit, or 0 if moves aren't
+// kept. The events follow in order, and closing the recording adds an end
+// record with a hash of the final board, which the replay checks against.
+// An event's top byte is its kind: a click keeps x in bits 28 to 55 and y in
+// bits 0 to 27, a key press keeps the first seven characters of the key, one
+// byte each, starting in bits 48 to 55 and padded with zeros
+class InputRecorder {
+  static final int MAGIC = 0x4C454D52; // "LEMR"
+  static final int VERSION = 3;
+  static final int CLICK = 1;
+  static final int KEY = 2;
+  static final int END = 3;
+  static final int KEY_CHARS = 7;
+
+  LightEmAll game;
+  DataOutputStream out;
+  long[] events;
+  int size;
+
+  // starts recording the given game, from whatever state it's in, to the
+  // given stream, keeping up to capacity events before writing them out; a
+  // game with moves it could undo or redo can't be recorded, as the replay
+  // couldn't undo them
+  InputRecorder(LightEmAll game, OutputStream out, int capacity) throws IOException {
+    if (game.journal != null && game.journal.end > game.journal.first) {
+      throw new IllegalArgumentException("the game has moves that could be undone");
+    }
+    this.game = game;
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.events = new long[capacity];
+    this.size = 0;
+
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+    this.out.writeInt(game.width);
+    this.out.writeInt(game.height);
+    this.out.writeLong(game.seed);
+    this.out.writeUTF(game.generator.getClass().getName());
+    this.out.writeInt(game.stations.length);
+
+    int tiles = game.width * game.height;
+    for (int index = 0; index < tiles; index++) {
+      this.out.writeByte(game.pieceAt(index).mask());
+    }
+    for (int word = 0; word < (tiles + 63) >> 6; word++) {
+      long bits = 0;
+      for (int index = word << 6; index < Math.min(tiles, (word + 1) << 6); index++) {
+        if (game.pieceAt(index).powered) {
+          bits |= 1L << index;
+        }
+      }
+      this.out.writeLong(bits);
+    }
+    this.out.writeBoolean(game.powerValid);
+    for (int k = 0; k < game.stations.length; k++) {
+      this.out.writeInt(game.stationIndex(k));
+    }
+    this.out.writeInt(game.selected);
+    this.out.writeBoolean(game.solution != null);
+    if (game.solution != null) {
+      this.out.write(game.solution);
+    }
+    this.out.writeInt(game.radius);
+    this.out.writeInt(game.tileSize);
+    this.out.writeBoolean(game.viewport);
+    this.out.writeInt(game.viewWidth);
+    this.out.writeInt(game.viewHeight);
+    this.out.writeInt(game.viewRow);
+    this.out.writeInt(game.viewCol);
+    this.out.writeBoolean(game.lighting);
+    this.out.writeBoolean(game.showIslands);
+    this.out.writeInt(game.journal == null ? 0 : game.journal.limit);
+    game.recorder = this;
+  }
+
+  // records a click at the given position
+  void click(int x, int y) {
+    this.add((long) CLICK << 56 | (x & 0xFFFFFFFL) << 28 | (y & 0xFFFFFFFL));
+  }
+
+  // records a press of the given key
+  void key(String key) {
+    long event = (long) KEY << 56;
+    for (int i = 0; i < KEY_CHARS && i < key.length(); i++) {
+      event |= (long) (key.charAt(i) & 0xFF) << (48 - 8 * i);
+    }
+    this.add(event);
+  }
+
+  // adds an event to the buffer, writing the buffer out first if it's full
+  void add(long event) {
+    if (this.size == this.events.length) {
+      try {
+        this.flush();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    this.events[this.size++] = event;
+  }
+
+  // writes out the events recorded so far
+  void flush() throws IOException {
+    for (int i = 0; i < this.size; i++) {
+      this.out.writeLong(this.events[i]);
+    }
+    this.size = 0;
+    this.out.flush();
+  }
+
+  // writes out the rest of the events and the end record, and stops
+  // recording the game
+  void close() throws IOException {
+    this.flush();
+    this.out.writeLong((long) END << 56);
+    this.out.writeLong(this.game.stateHash());
+    this.out.close();
+    if (this.game.recorder == this) {
+      this.game.recorder = null;
+    }
+  }
+
+  // returns the kind of the given event
+  static int kind(long event) {
+    return (int) (event >>> 56);
+  }
+
+  // returns the x coordinate of the given click
+  static int clickX(long event) {
+    return (int) (event >>> 28 & 0xFFFFFFFL);
+  }
+
+  // returns the y coordinate of the given click
+  static int clickY(long event) {
+    return (int) (event & 0xFFFFFFFL);
+  }
+
+  // returns the key, or its first seven characters, of the given key press
+  static String keyName(long event) {
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < KEY_CHARS; i++) {
+      char c = (char) (event >>> (48 - 8 * i) & 0xFF);
+      if (c == 0) {
+        break;
+      }
+      key.append(c);
+    }
+    return key.toString();
+  }
+}
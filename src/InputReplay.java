@@ -0,0 +1,249 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javalib.worldimages.Posn;
+
+// plays a session recorded by InputRecorder back as fast as the game can
+// take it, without a window or tick timer, on a game put back in the state
+// the recording started from, e.g.
+//   java InputReplay session.rec 10
+// replays session.rec ten times and prints how many events a second went
+// through, how long single events took, and whether every replay ended on
+// the board the recording did
+class InputReplay {
+  int width;
+  int height;
+  long seed;
+  BoardGenerator generator;
+  // the game as it was when recording started
+  byte[] masks;
+  long[] powered;
+  boolean powerValid;
+  int[] stations;
+  int selected;
+  byte[] solution;
+  int radius;
+  int tileSize;
+  boolean viewport;
+  int viewWidth;
+  int viewHeight;
+  int viewRow;
+  int viewCol;
+  boolean lighting;
+  boolean showIslands;
+  int journalLimit;
+  // the events, with each key press's key decoded ahead of time so the
+  // replay itself only calls the game
+  long[] events;
+  String[] keys;
+  int size;
+  boolean hasHash;
+  long hash;
+
+  // reads a recording from the given stream
+  InputReplay(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if (data.readInt() != InputRecorder.MAGIC) {
+      throw new IOException("not a recording");
+    }
+    int version = data.readInt();
+    if (version != InputRecorder.VERSION) {
+      throw new IOException("unsupported recording version " + version);
+    }
+    this.width = data.readInt();
+    this.height = data.readInt();
+    this.seed = data.readLong();
+    this.generator = InputReplay.generator(data.readUTF());
+    this.stations = new int[data.readInt()];
+    this.masks = new byte[this.width * this.height];
+    data.readFully(this.masks);
+    this.powered = new long[(this.masks.length + 63) >> 6];
+    for (int word = 0; word < this.powered.length; word++) {
+      this.powered[word] = data.readLong();
+    }
+    this.powerValid = data.readBoolean();
+    for (int k = 0; k < this.stations.length; k++) {
+      this.stations[k] = data.readInt();
+    }
+    this.selected = data.readInt();
+    if (data.readBoolean()) {
+      this.solution = new byte[this.masks.length];
+      data.readFully(this.solution);
+    }
+    this.radius = data.readInt();
+    this.tileSize = data.readInt();
+    this.viewport = data.readBoolean();
+    this.viewWidth = data.readInt();
+    this.viewHeight = data.readInt();
+    this.viewRow = data.readInt();
+    this.viewCol = data.readInt();
+    this.lighting = data.readBoolean();
+    this.showIslands = data.readBoolean();
+    this.journalLimit = data.readInt();
+    this.events = new long[64];
+    this.keys = new String[64];
+    HashMap<Long, String> names = new HashMap<Long, String>();
+
+    while (true) {
+      long event;
+      try {
+        event = data.readLong();
+      }
+      catch (EOFException e) {
+        break;
+      }
+      int kind = InputRecorder.kind(event);
+      if (kind == InputRecorder.END) {
+        this.hash = data.readLong();
+        this.hasHash = true;
+        break;
+      }
+      if (kind != InputRecorder.CLICK && kind != InputRecorder.KEY) {
+        throw new IOException("unknown event kind " + kind);
+      }
+      if (this.size == this.events.length) {
+        this.events = Arrays.copyOf(this.events, this.size * 2);
+        this.keys = Arrays.copyOf(this.keys, this.size * 2);
+      }
+      if (kind == InputRecorder.KEY) {
+        String key = names.get(event);
+        if (key == null) {
+          key = InputRecorder.keyName(event);
+          names.put(event, key);
+        }
+        this.keys[this.size] = key;
+      }
+      this.events[this.size++] = event;
+    }
+  }
+
+  // returns a new generator of the class with the given name
+  static BoardGenerator generator(String name) throws IOException {
+    try {
+      return (BoardGenerator) Class.forName(name).getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IOException("unknown board generator " + name, e);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("usage: java InputReplay <recording> [times]");
+      return;
+    }
+    InputReplay replay;
+    try (InputStream in = new FileInputStream(args[0])) {
+      replay = new InputReplay(in);
+    }
+    int times = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    long[] latencies = new long[replay.size * times];
+    boolean matches = true;
+    long start = System.nanoTime();
+    for (int i = 0; i < times; i++) {
+      LightEmAll game = replay.play(latencies, i * replay.size);
+      matches &= replay.matches(game);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    Arrays.sort(latencies);
+    System.out.printf("%d events on a %dx%d board, %d times in %.3f s (%.0f events/s)%n",
+        replay.size, replay.width, replay.height, times, seconds, latencies.length / seconds);
+    System.out.printf("latency us: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+        InputReplay.percentile(latencies, 0.5) / 1e3,
+        InputReplay.percentile(latencies, 0.9) / 1e3,
+        InputReplay.percentile(latencies, 0.99) / 1e3,
+        InputReplay.percentile(latencies, 0.999) / 1e3,
+        InputReplay.percentile(latencies, 1.0) / 1e3);
+    System.out.println(!replay.hasHash ? "recording has no final state to check"
+        : matches ? "final state matches the recording" : "FINAL STATE DIFFERS");
+  }
+
+  // returns a new game in the state the recording started from
+  LightEmAll start() {
+    PackedBoard packed = new PackedBoard(this.width, this.height);
+    packed.masks = this.masks.clone();
+    for (int index = 0; index < packed.masks.length; index++) {
+      packed.setPowered(index, (this.powered[index >> 6] & (1L << index)) != 0);
+    }
+    for (int index : this.stations) {
+      packed.setStation(index, true);
+    }
+    packed.solution = this.solution == null ? null : this.solution.clone();
+    LightEmAll game = new LightEmAll(packed, this.seed);
+    game.generator = this.generator;
+    game.stations = this.stations.clone();
+    game.powerRow = this.stations[0] / this.width;
+    game.powerCol = this.stations[0] % this.width;
+    game.selected = this.selected;
+    game.radius = this.radius;
+    // power that was up to date is worked out again to rebuild where each
+    // tile gets it from, which gives the same tiles; power that wasn't is
+    // left as it was, for the first move to bring up to date
+    if (this.powerValid) {
+      game.updatePower();
+    }
+
+    game.tileSize = this.tileSize;
+    game.viewport = this.viewport;
+    game.viewWidth = this.viewWidth;
+    game.viewHeight = this.viewHeight;
+    game.viewRow = this.viewRow;
+    game.viewCol = this.viewCol;
+    game.setLighting(this.lighting);
+    game.setIslands(this.showIslands);
+    if (this.journalLimit > 0) {
+      new MoveJournal(game, this.journalLimit);
+    }
+    return game;
+  }
+
+  // plays the recording back on a fresh game and returns it, writing how
+  // many nanoseconds each event took into latencies from the given offset
+  // on, unless latencies is null
+  LightEmAll play(long[] latencies, int offset) {
+    LightEmAll game = this.start();
+    for (int i = 0; i < this.size; i++) {
+      long start = System.nanoTime();
+      this.apply(game, i);
+      if (latencies != null) {
+        latencies[offset + i] = System.nanoTime() - start;
+      }
+    }
+    return game;
+  }
+
+  // hands the given event to the game
+  void apply(LightEmAll game, int i) {
+    long event = this.events[i];
+    if (InputRecorder.kind(event) == InputRecorder.CLICK) {
+      game.onMouseClicked(new Posn(InputRecorder.clickX(event), InputRecorder.clickY(event)));
+    }
+    else {
+      game.onKeyEvent(this.keys[i]);
+    }
+  }
+
+  // does the given game end up as the recorded one did? Recordings without
+  // an end record match anything
+  boolean matches(LightEmAll game) {
+    return !this.hasHash || game.stateHash() == this.hash;
+  }
+
+  // returns the value at least the given fraction of the sorted values are no
+  // bigger than
+  static long percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(sorted.length * fraction) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+}
@@ -0,0 +1,474 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// labels every wire "island" of a board, each set of tiles joined to one
+// another by wires that meet, with an id shared by all its tiles, and keeps
+// the labels up to date as tiles rotate
+//
+// labeling the whole board splits its rows into bands and joins the tiles of
+// each band in parallel with a union-find kept in the label array itself,
+// always hanging the larger root under the smaller, so each band only writes
+// its own tiles. One thread then merges the bands along the seams between
+// them, width tiles a seam, and the tiles are pointed straight at their roots
+// in parallel again; an island's id is then the smallest index on it however
+// many bands there were. After that a rotation only relabels what it
+// touches: the ends of wires that came apart are searched from all at once,
+// a tile from each end in turn, until all but one of the searches have run
+// out, so splitting an island costs the size of the smaller pieces, and
+// joining two islands relabels the smaller of them
+class IslandLabeler {
+  // the fewest rows a band is given
+  static final int BAND_ROWS = 16;
+
+  int width;
+  int height;
+  // the masks the labels are for, indexed by row * width + col
+  byte[] masks;
+  // each tile's island id, how many tiles have each id, and how many islands
+  // there are
+  int[] label;
+  int[] sizes;
+  int count;
+  // ids to hand out to islands split off: the ones let go of below
+  // nextFree, and then the first unused one from nextFree on
+  int[] released;
+  int releasedCount;
+  int nextFree;
+  // the tiles whose id changed in the last update
+  int[] changed;
+  int changedCount;
+  // scratch space for the searches: which search last reached each tile,
+  // numbered from epoch, and the tiles each search has reached, in the order
+  // it reached them, with how many of them it has searched from
+  int[] seen;
+  int epoch;
+  int[][] found;
+  int[] foundCount;
+  int[] searched;
+  int[] group;
+  ForkJoinPool pool;
+
+  // labels the islands of a width x height board with the given pool, once
+  // its masks are filled in and label is called
+  IslandLabeler(int width, int height, ForkJoinPool pool) {
+    this.width = width;
+    this.height = height;
+    this.pool = pool;
+    this.masks = new byte[width * height];
+    this.label = new int[width * height];
+    this.sizes = new int[width * height];
+    this.released = new int[16];
+    this.changed = new int[64];
+    this.found = new int[5][];
+    this.foundCount = new int[5];
+    this.searched = new int[5];
+    this.group = new int[5];
+    for (int k = 0; k < this.found.length; k++) {
+      this.found[k] = new int[64];
+    }
+  }
+
+  // labels the whole board with as many bands as suit the pool
+  void label() {
+    this.label(Math.max(1, Math.min(this.height / BAND_ROWS, this.pool.getParallelism() * 4)));
+  }
+
+  // labels the whole board, splitting it into the given number of bands of
+  // rows to join in parallel
+  void label(int bands) {
+    int width = this.width;
+    int height = this.height;
+    int[] label = this.label;
+    byte[] masks = this.masks;
+    this.pool.invoke(new RangeTask((from, to) -> {
+      for (int band = from; band < to; band++) {
+        int first = band * height / bands * width;
+        int last = (band + 1) * height / bands * width;
+        for (int rowStart = first; rowStart < last; rowStart += width) {
+          for (int i = rowStart; i < rowStart + width; i++) {
+            int mask = masks[i];
+            boolean left = i > rowStart && (mask & GamePiece.LEFT) != 0
+                && (masks[i - 1] & GamePiece.RIGHT) != 0;
+            boolean top = rowStart > first && (mask & GamePiece.TOP) != 0
+                && (masks[i - width] & GamePiece.BOTTOM) != 0;
+            if (left && top) {
+              label[i] = this.find(i - 1);
+              this.union(i, i - width);
+            }
+            else if (left) {
+              label[i] = this.find(i - 1);
+            }
+            else if (top) {
+              label[i] = this.find(i - width);
+            }
+            else {
+              label[i] = i;
+            }
+          }
+        }
+      }
+      return 0;
+    }, 0, bands, 1));
+
+    for (int band = 1; band < bands; band++) {
+      int seam = band * height / bands * width;
+      for (int i = seam - width; i < seam; i++) {
+        if ((this.linksAt(i) & GamePiece.BOTTOM) != 0) {
+          this.union(i, i + width);
+        }
+      }
+    }
+
+    // a tile's parent is never bigger than it, and writing a root over the
+    // parent only shortens the path, so the bands can point their tiles at
+    // their roots together; each band counts the tiles of the islands whose
+    // roots it has, and leaves the rest to be counted afterwards
+    int[] sizes = this.sizes;
+    int[][] spilled = new int[bands][];
+    int[] spilledCount = new int[bands];
+    this.count = (int) (long) this.pool.invoke(new RangeTask((from, to) -> {
+      long roots = 0;
+      for (int band = from; band < to; band++) {
+        int first = band * height / bands * width;
+        int last = (band + 1) * height / bands * width;
+        int[] spill = new int[16];
+        int spillCount = 0;
+        Arrays.fill(sizes, first, last, 0);
+        for (int i = first; i < last; i++) {
+          int root = label[i];
+          while (label[root] != root) {
+            root = label[root];
+          }
+          label[i] = root;
+          if (root >= first) {
+            sizes[root]++;
+            roots += root == i ? 1 : 0;
+          }
+          else {
+            if (spillCount == spill.length) {
+              spill = Arrays.copyOf(spill, spillCount * 2);
+            }
+            spill[spillCount++] = root;
+          }
+        }
+        spilled[band] = spill;
+        spilledCount[band] = spillCount;
+      }
+      return roots;
+    }, 0, bands, 1));
+    for (int band = 0; band < bands; band++) {
+      for (int i = 0; i < spilledCount[band]; i++) {
+        sizes[spilled[band][i]]++;
+      }
+    }
+    this.releasedCount = 0;
+    this.nextFree = 0;
+    this.changedCount = 0;
+  }
+
+  // finds the root of the set the tile belongs to, halving the path to it
+  int find(int item) {
+    while (this.label[item] != item) {
+      this.label[item] = this.label[this.label[item]];
+      item = this.label[item];
+    }
+    return item;
+  }
+
+  // connects the sets that contain the two given tiles, hanging the larger
+  // root under the smaller one
+  void union(int a, int b) {
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    if (rootA < rootB) {
+      this.label[rootB] = rootA;
+    }
+    else if (rootB < rootA) {
+      this.label[rootA] = rootB;
+    }
+  }
+
+  // returns the directions in which the tile at the given index has a wire
+  // that meets a wire from its neighbor
+  int linksAt(int index) {
+    int mask = this.masks[index];
+    int row = index / this.width;
+    int col = index - row * this.width;
+    int links = 0;
+
+    if ((mask & GamePiece.TOP) != 0 && row > 0
+        && (this.masks[index - this.width] & GamePiece.BOTTOM) != 0) {
+      links |= GamePiece.TOP;
+    }
+    if ((mask & GamePiece.RIGHT) != 0 && col < this.width - 1
+        && (this.masks[index + 1] & GamePiece.LEFT) != 0) {
+      links |= GamePiece.RIGHT;
+    }
+    if ((mask & GamePiece.BOTTOM) != 0 && row < this.height - 1
+        && (this.masks[index + this.width] & GamePiece.TOP) != 0) {
+      links |= GamePiece.BOTTOM;
+    }
+    if ((mask & GamePiece.LEFT) != 0 && col > 0
+        && (this.masks[index - 1] & GamePiece.RIGHT) != 0) {
+      links |= GamePiece.LEFT;
+    }
+    return links;
+  }
+
+  // returns the id of the island the tile at the given index is on
+  int islandOf(int index) {
+    return this.label[index];
+  }
+
+  // returns how many tiles are on the island of the tile at the given index
+  int sizeOf(int index) {
+    return this.sizes[this.label[index]];
+  }
+
+  // returns how many tiles each island has, largest first
+  int[] islandSizes() {
+    int[] found = new int[this.count];
+    int next = 0;
+    for (int size : this.sizes) {
+      if (size > 0) {
+        found[next++] = size;
+      }
+    }
+    Arrays.sort(found);
+    for (int i = 0; i < found.length / 2; i++) {
+      int swap = found[i];
+      found[i] = found[found.length - 1 - i];
+      found[found.length - 1 - i] = swap;
+    }
+    return found;
+  }
+
+  // brings the labels up to date after the tile at the given index took on
+  // the given mask, first taking away the wires it lost, then adding those
+  // it gained
+  void update(int index, int mask) {
+    this.changedCount = 0;
+    int before = this.linksAt(index);
+    this.masks[index] &= mask;
+    int kept = this.linksAt(index);
+    if (before != kept) {
+      this.split(index, before & ~kept);
+    }
+    this.masks[index] = (byte) mask;
+    int gained = this.linksAt(index) & ~kept;
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((gained & dir) != 0) {
+        this.join(index, this.neighborIndex(index, dir));
+      }
+    }
+  }
+
+  // relabels the pieces the island of the tile at the given index may have
+  // split into when the wires in the given directions came apart
+  void split(int index, int lost) {
+    if (this.seen == null) {
+      this.seen = new int[this.masks.length];
+    }
+    this.epoch += 8;
+    if (this.epoch < 0) {
+      Arrays.fill(this.seen, 0);
+      this.epoch = 8;
+    }
+
+    int searches = 0;
+    this.start(searches++, index);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((lost & dir) != 0) {
+        this.start(searches++, this.neighborIndex(index, dir));
+      }
+    }
+    while (this.openGroups(searches) > 1) {
+      for (int k = 0; k < searches; k++) {
+        if (this.searched[k] < this.foundCount[k]) {
+          this.step(k);
+        }
+      }
+    }
+
+    // the open group, or if none is, the biggest, keeps the island's id
+    int keep = -1;
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == k && this.isOpen(k, searches)) {
+        keep = k;
+      }
+    }
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == k && !this.isOpen(k, searches) && (keep < 0
+          || !this.isOpen(keep, searches)
+          && this.groupSize(k, searches) > this.groupSize(keep, searches))) {
+        keep = k;
+      }
+    }
+    int id = this.label[index];
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == k && k != keep) {
+        int newId = this.allocate();
+        for (int j = 0; j < searches; j++) {
+          if (this.groupOf(j) == k) {
+            for (int i = 0; i < this.foundCount[j]; i++) {
+              this.relabel(this.found[j][i], newId);
+            }
+            this.sizes[id] -= this.foundCount[j];
+          }
+        }
+        this.count++;
+      }
+    }
+  }
+
+  // starts the given search at the given tile
+  void start(int k, int tile) {
+    this.group[k] = k;
+    this.found[k][0] = tile;
+    this.foundCount[k] = 1;
+    this.searched[k] = 0;
+    this.seen[tile] = this.epoch + k;
+  }
+
+  // searches from the next tile the given search has reached, joining its
+  // group to the group of any search it runs into
+  void step(int k) {
+    int tile = this.found[k][this.searched[k]++];
+    int links = this.linksAt(tile);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((links & dir) != 0) {
+        int next = this.neighborIndex(tile, dir);
+        int other = this.seen[next] - this.epoch;
+        if (other >= 0 && other < 8) {
+          int mine = this.groupOf(k);
+          int theirs = this.groupOf(other);
+          this.group[Math.max(mine, theirs)] = Math.min(mine, theirs);
+        }
+        else {
+          this.seen[next] = this.epoch + k;
+          if (this.foundCount[k] == this.found[k].length) {
+            this.found[k] = Arrays.copyOf(this.found[k], this.found[k].length * 2);
+          }
+          this.found[k][this.foundCount[k]++] = next;
+        }
+      }
+    }
+  }
+
+  // returns the search that stands for the given search's group
+  int groupOf(int k) {
+    while (this.group[k] != k) {
+      k = this.group[k];
+    }
+    return k;
+  }
+
+  // does the group the given search stands for still have tiles to search
+  // from?
+  boolean isOpen(int root, int searches) {
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == root && this.searched[k] < this.foundCount[k]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // returns how many tiles the group the given search stands for has reached
+  int groupSize(int root, int searches) {
+    int size = 0;
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == root) {
+        size += this.foundCount[k];
+      }
+    }
+    return size;
+  }
+
+  // returns how many groups still have tiles to search from
+  int openGroups(int searches) {
+    int open = 0;
+    for (int k = 0; k < searches; k++) {
+      if (this.groupOf(k) == k && this.isOpen(k, searches)) {
+        open++;
+      }
+    }
+    return open;
+  }
+
+  // joins the islands of the two given tiles, now wired together, by
+  // relabeling the smaller of them
+  void join(int a, int b) {
+    int idA = this.label[a];
+    int idB = this.label[b];
+    if (idA == idB) {
+      return;
+    }
+    int from = this.sizes[idA] < this.sizes[idB] ? a : b;
+    int small = this.label[from];
+    int big = small == idA ? idB : idA;
+
+    int[] queue = this.found[0];
+    int size = 0;
+    this.relabel(from, big);
+    queue[size++] = from;
+    for (int head = 0; head < size; head++) {
+      int tile = queue[head];
+      int links = this.linksAt(tile);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((links & dir) != 0) {
+          int next = this.neighborIndex(tile, dir);
+          if (this.label[next] == small) {
+            this.relabel(next, big);
+            if (size == queue.length) {
+              queue = Arrays.copyOf(queue, queue.length * 2);
+            }
+            queue[size++] = next;
+          }
+        }
+      }
+    }
+    this.found[0] = queue;
+    this.sizes[small] = 0;
+    this.release(small);
+    this.count--;
+  }
+
+  // gives the tile at the given index the given id, counting it toward that
+  // id's island and remembering that it changed
+  void relabel(int tile, int id) {
+    this.label[tile] = id;
+    this.sizes[id]++;
+    if (this.changedCount == this.changed.length) {
+      this.changed = Arrays.copyOf(this.changed, this.changed.length * 2);
+    }
+    this.changed[this.changedCount++] = tile;
+  }
+
+  // returns an id no island has
+  int allocate() {
+    if (this.releasedCount > 0) {
+      return this.released[--this.releasedCount];
+    }
+    while (this.sizes[this.nextFree] != 0) {
+      this.nextFree++;
+    }
+    return this.nextFree++;
+  }
+
+  // lets go of the given id, which no island has any more
+  void release(int id) {
+    if (id < this.nextFree) {
+      if (this.releasedCount == this.released.length) {
+        this.released = Arrays.copyOf(this.released, this.released.length * 2);
+      }
+      this.released[this.releasedCount++] = id;
+    }
+  }
+
+  // returns the index of the tile next to the given one in the given
+  // direction
+  int neighborIndex(int index, int dir) {
+    return BoardGenerator.neighbor(index, this.width, dir);
+  }
+}
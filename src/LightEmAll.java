@@ -1,38 +1,209 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
-import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
 
 // represents the game LightEmAll
 class LightEmAll extends World {
+  // the tile sizes the camera zooms through, in pixels
+  static final int[] ZOOMS = new int[] {1, 2, 3, 5, 8, 12, 20, 28, 40, 56, 80};
+  // tiles smaller than this are drawn without their wires
+  static final int DETAIL_SIZE = 8;
+  // the distance of a tile power can't reach
+  static final int FAR = Integer.MAX_VALUE;
+  // how many shades of light lit tiles are drawn in, brightest first
+  static final Color[] SHADES = new Color[] {Color.LIGHT_GRAY, new Color(255, 255, 0),
+      new Color(240, 220, 0), new Color(225, 185, 0), new Color(210, 150, 0),
+      new Color(195, 115, 0), new Color(180, 80, 0)};
+  // the colors powered tiles are drawn in when there are several stations,
+  // after the color of unpowered tiles: one for each station, repeating
+  static final Color[] FEEDER_COLORS = new Color[] {Color.LIGHT_GRAY, Color.YELLOW,
+      new Color(255, 165, 60), new Color(150, 230, 90), new Color(120, 200, 255),
+      new Color(240, 130, 220), new Color(255, 230, 150)};
+  // the colors islands are drawn in: lone tiles, the powered island, then
+  // the others by their ids
+  static final Color[] ISLAND_COLORS = new Color[] {Color.LIGHT_GRAY, Color.YELLOW,
+      new Color(230, 90, 90), new Color(90, 150, 230), new Color(110, 200, 110),
+      new Color(200, 120, 220), new Color(240, 150, 60), new Color(60, 200, 200),
+      new Color(170, 140, 100), new Color(250, 150, 190)};
   ArrayList<ArrayList<GamePiece>> board;
   ArrayList<GamePiece> nodes;
   int width;
   int height;
   int powerRow;
   int powerCol;
+  // the tiles the power stations are on, the first always being the one at
+  // powerRow and powerCol, and which of them the arrow keys move
+  int[] stations;
+  int selected;
   int radius;
+  // scratch space for power propagation, indexed by row * width + col
+  int[] powerStack;
+  int[] powerCut;
+  // the direction each powered tile gets its power from, 0 for a station,
+  // and which station's power it gets
+  byte[] powerParent;
+  int[] feeder;
+  // whether the powered flags match what updatePower would compute
+  boolean powerValid;
+  // how many tiles are powered, kept up to date by setPowered and counted
+  // afresh by updatePower
+  int poweredCount;
+  // the powered tiles as of the start of updatePower, while it runs
+  long[] powerBefore;
+  boolean repowering;
+  // the scene makeScene last drew, which it draws over while only a few
+  // tiles change, the tile images it used, and how many tiles are on it
+  WorldScene scene;
+  TileImageCache sceneTiles;
+  int scenePlaced;
+  // the tiles that have changed since the scene was drawn
+  int[] dirtyTiles;
+  long[] dirtyBits;
+  int dirtyCount;
+  // the seed the board was generated from, and what built its tree
+  long seed;
+  BoardGenerator generator;
+  // records the clicks and key presses, if the session is being recorded
+  InputRecorder recorder;
+  // the moves made so far, if they're being kept for undo
+  MoveJournal journal;
+  // the camera: how many pixels across a tile is drawn, and, in viewport
+  // mode, the size of the window in pixels and the tile in its top left
+  // corner; outside viewport mode the whole board is drawn
+  int tileSize;
+  boolean viewport;
+  int viewWidth;
+  int viewHeight;
+  int viewRow;
+  int viewCol;
+  // the plain cells drawn instead of tiles when they are too small for wires
+  WorldImage[] sceneCells;
+  // in lighting mode power only lights the tiles within radius wires of a
+  // station, more dimly the farther away they are: the distance of every
+  // tile from the nearest station along the wires, FAR if power can't reach
+  // it, and how many tiles are lit
+  boolean lighting;
+  int[] dist;
+  int litCount;
+  // scratch space for bringing the distances up to date: a heap of tiles
+  // keyed by distance, each tile's part in the update, and the tiles that
+  // took part
+  long[] lightHeap;
+  int lightHeapSize;
+  byte[] lightState;
+  int[] lightTouched;
+  // the masks the board was generated with before it was scrambled, if
+  // known, and the tiles whose masks differ from them: the first
+  // misrotatedCount of misrotated, in no particular order, with where each
+  // tile is in that list, or -1 if it isn't
+  byte[] solution;
+  int[] misrotated;
+  int[] misrotatedAt;
+  int misrotatedCount;
+  // in island mode every set of tiles wired together is drawn in a color of
+  // its own, kept track of by islands
+  boolean showIslands;
+  IslandLabeler islands;
 
   LightEmAll(int width, int height) {
+    this(width, height, new Random().nextLong());
+  }
+
+  // generates the board makeRandomBoard lays out for the given seed
+  LightEmAll(int width, int height, long seed) {
+    this(width, height, seed, new KruskalGenerator());
+  }
+
+  // generates the board the given generator lays out for the given seed
+  LightEmAll(int width, int height, long seed, BoardGenerator generator) {
+    this(width, height, seed, generator, 1);
+  }
+
+  // generates the board the given generator lays out for the given seed,
+  // with the given number of power stations: the first in the top left
+  // corner and the rest on tiles drawn at random
+  LightEmAll(int width, int height, long seed, BoardGenerator generator, int stations) {
     this.width = width;
     this.height = height;
     this.powerRow = 0;
     this.powerCol = 0;
     this.radius = 0;
+    this.tileSize = 40;
     this.nodes = new ArrayList<GamePiece>();
     this.board = new ArrayList<ArrayList<GamePiece>>();
+    this.seed = seed;
+    this.generator = generator;
+    this.stations = new int[Math.max(1, Math.min(stations, width * height))];
+
+    this.makeRandomBoard(new Random(seed));
+  }
 
-    this.makeRandomBoard(new Random());
+  // unpacks the given board, with the first of its power stations as the
+  // station the arrow keys move
+  LightEmAll(PackedBoard packed) {
+    this(packed, 0);
   }
 
-  // generates a random board with Kruskal’s Algorithm
+  // unpacks the given board, which was generated from the given seed, with
+  // the first of its power stations as the station the arrow keys move
+  LightEmAll(PackedBoard packed, long seed) {
+    this.width = packed.width;
+    this.height = packed.height;
+    this.powerRow = 0;
+    this.powerCol = 0;
+    this.radius = 0;
+    this.tileSize = 40;
+    this.nodes = new ArrayList<GamePiece>();
+    this.board = new ArrayList<ArrayList<GamePiece>>();
+    this.seed = seed;
+    this.generator = new KruskalGenerator();
+    this.poweredCount = packed.poweredCount;
+
+    for (int col = 0; col < this.width; col++) {
+      ArrayList<GamePiece> column = new ArrayList<GamePiece>();
+      for (int row = 0; row < this.height; row++) {
+        column.add(packed.pieceAt(row, col));
+      }
+      this.board.add(column);
+    }
+    int count = 0;
+    for (long word : packed.stations) {
+      count += Long.bitCount(word);
+    }
+    this.stations = new int[Math.max(1, count)];
+    count = 0;
+    for (int index = 0; index < packed.masks.length; index++) {
+      if (packed.isStation(index)) {
+        this.stations[count++] = index;
+      }
+    }
+    this.powerRow = this.stations[0] / this.width;
+    this.powerCol = this.stations[0] % this.width;
+    for (int col = 0; col < this.width; col++) {
+      for (int row = 0; row < this.height; row++) {
+        this.nodes.add(this.board.get(col).get(row));
+      }
+    }
+    this.setSolution(packed.solution);
+  }
+
+  // generates a random board from a tree the game's generator builds
   void makeRandomBoard(Random rand) {
+    PackedBoard packed = PackedBoard.random(this.generator, this.width, this.height,
+        this.powerRow, this.powerCol, rand);
 
     this.board = new ArrayList<ArrayList<GamePiece>>();
     this.nodes = new ArrayList<GamePiece>();
@@ -41,329 +212,1109 @@ class LightEmAll extends World {
       ArrayList<GamePiece> column = new ArrayList<GamePiece>();
       for (int row = 0; row < this.height; row++) {
         GamePiece gp = new GamePiece(row, col);
+        gp.setMask(packed.mask(packed.index(row, col)));
         column.add(gp);
         this.nodes.add(gp);
       }
       this.board.add(column);
     }
 
-    ArrayList<Edge> edges = new ArrayList<>();
-    for (GamePiece gp : this.nodes) {
-      int row = gp.row;
-      int col = gp.col;
-
-      if (row < this.height - 1) {
-        GamePiece neighbor = this.board.get(col).get(row + 1);
-        edges.add(new Edge(gp, neighbor, rand.nextInt(100)));
-      }
-      if (col < this.width - 1) {
-        GamePiece neighbor = this.board.get(col + 1).get(row);
-        edges.add(new Edge(gp, neighbor, rand.nextInt(100)));
+    this.powerValid = false;
+    this.poweredCount = 0;
+    this.scene = null;
+    GamePiece power = this.board.get(this.powerCol).get(this.powerRow);
+    power.powerStation = true;
+    this.setPowered(power, true);
+    this.stations[0] = this.powerRow * this.width + this.powerCol;
+    for (int k = 1; k < this.stations.length; k++) {
+      GamePiece gp = this.pieceAt(rand.nextInt(this.width * this.height));
+      while (gp.powerStation) {
+        gp = this.pieceAt(rand.nextInt(this.width * this.height));
       }
+      gp.powerStation = true;
+      this.setPowered(gp, true);
+      this.stations[k] = gp.row * this.width + gp.col;
+    }
+    this.selected = 0;
+    this.radius = 0;
+    this.setSolution(packed.solution);
+    if (this.lighting) {
+      this.computeDistances();
     }
+    if (this.showIslands) {
+      this.labelIslands();
+    }
+  }
 
-    UnionFind uf = new UnionFind();
-    for (GamePiece gp : this.nodes) {
-      uf.makeSet(gp);
+  // draws the world state, only redrawing the tiles that changed since the
+  // last frame on top of it unless the board is new, the camera has moved or
+  // the tile images have changed, or enough tiles have been redrawn that the
+  // scene has grown to twice the size of a fresh one
+  //
+  // only the tiles the camera can see are drawn, and tiles smaller than
+  // DETAIL_SIZE pixels are drawn as plain cells colored by whether they're
+  // powered, since their wires couldn't be made out anyway
+  public WorldScene makeScene() {
+    long start = EventMetrics.start();
+    int tileSize = this.tileSize;
+    TileImageCache tiles = null;
+    if (tileSize >= DETAIL_SIZE && this.showIslands) {
+      tiles = TileImageCache.shared(tileSize, Math.max(1, tileSize / 10), ISLAND_COLORS);
+    }
+    else if (tileSize >= DETAIL_SIZE && this.lighting) {
+      tiles = TileImageCache.shared(tileSize, Math.max(1, tileSize / 10), SHADES);
     }
+    else if (tileSize >= DETAIL_SIZE && this.stations.length > 1) {
+      tiles = TileImageCache.shared(tileSize, Math.max(1, tileSize / 10), FEEDER_COLORS);
+    }
+    else if (tileSize >= DETAIL_SIZE) {
+      tiles = TileImageCache.shared(tileSize, Math.max(1, tileSize / 10), Color.LIGHT_GRAY,
+          Color.YELLOW);
+    }
+    int count = this.width * this.height;
+    int visible = (this.lastRow() - this.viewRow) * (this.lastCol() - this.viewCol);
+
+    if (this.scene == null || tiles != this.sceneTiles
+        || this.scenePlaced + this.dirtyCount > 2 * visible) {
+      this.scene = new WorldScene(this.sceneWidth(), this.sceneHeight());
+      this.sceneTiles = tiles;
+      if (tiles == null && this.showIslands) {
+        this.sceneCells = GamePiece.drawCells(tileSize, ISLAND_COLORS);
+      }
+      else if (tiles == null && this.stations.length > 1 && !this.lighting) {
+        this.sceneCells = GamePiece.drawCells(tileSize, FEEDER_COLORS);
+      }
+      else if (tiles == null) {
+        this.sceneCells = GamePiece.drawCells(tileSize);
+      }
+      this.scenePlaced = 0;
+      if (this.dirtyBits == null || this.dirtyTiles.length != count) {
+        this.dirtyTiles = new int[count];
+        this.dirtyBits = new long[(count + 63) >> 6];
+      }
+      else {
+        Arrays.fill(this.dirtyBits, 0L);
+      }
 
-    Collections.sort(edges, (e1, e2) -> e1.weight - e2.weight);
+      for (int col = this.viewCol; col < this.lastCol(); col++) {
+        for (int row = this.viewRow; row < this.lastRow(); row++) {
+          this.placeTile(this.board.get(col).get(row), tileSize);
+        }
+      }
+    }
+    else {
+      for (int i = 0; i < this.dirtyCount; i++) {
+        int index = this.dirtyTiles[i];
+        this.dirtyBits[index >> 6] &= ~(1L << index);
+        GamePiece gp = this.pieceAt(index);
+        if (gp.row >= this.viewRow && gp.row < this.lastRow() && gp.col >= this.viewCol
+            && gp.col < this.lastCol()) {
+          this.placeTile(gp, tileSize);
+        }
+      }
+    }
+    this.dirtyCount = 0;
+    EventMetrics.record(EventMetrics.MAKE_SCENE, start);
+    return this.scene;
+  }
 
-    for (Edge edge : edges) {
-      GamePiece a = edge.from;
-      GamePiece b = edge.to;
+  // draws the given tile onto the scene where it belongs
+  void placeTile(GamePiece gp, int tileSize) {
+    boolean isPowerStation = (gp.row == this.powerRow && gp.col == this.powerCol
+        || this.stations.length > 1) && gp.powerStation;
+    int shade = gp.powered ? 1 : 0;
+    if (this.showIslands) {
+      shade = this.islandShade(gp.row * this.width + gp.col);
+    }
+    else if (this.lighting) {
+      shade = gp.powered ? this.shade(gp.row * this.width + gp.col) : 0;
+    }
+    else if (this.stations.length > 1 && gp.powered) {
+      shade = 1 + this.feeder[gp.row * this.width + gp.col] % (FEEDER_COLORS.length - 1);
+    }
+    WorldImage tile;
+    if (this.sceneTiles == null) {
+      int cell = this.showIslands || this.stations.length > 1 && !this.lighting ? shade
+          : shade > 0 ? 1 : 0;
+      tile = this.sceneCells[isPowerStation ? this.sceneCells.length - 1 : cell];
+    }
+    else {
+      tile = this.sceneTiles.get(gp.mask(), shade, isPowerStation);
+    }
+    this.scene.placeImageXY(tile, (gp.col - this.viewCol) * tileSize + tileSize / 2,
+        (gp.row - this.viewRow) * tileSize + tileSize / 2);
+    this.scenePlaced++;
+  }
 
-      if (uf.find(a) != uf.find(b)) {
-        uf.union(a, b);
+  // returns how wide the scene is in pixels
+  int sceneWidth() {
+    return this.viewport ? this.viewWidth : this.width * this.tileSize;
+  }
 
-        if (a.row == b.row) {
+  // returns how tall the scene is in pixels
+  int sceneHeight() {
+    return this.viewport ? this.viewHeight : this.height * this.tileSize;
+  }
 
-          if (a.col < b.col) {
-            a.right = true;
-            b.left = true;
-          }
-          else {
-            a.left = true;
-            b.right = true;
-          }
-        }
-        else {
+  // returns the column just past the last one the camera can see
+  int lastCol() {
+    if (!this.viewport) {
+      return this.width;
+    }
+    return Math.min(this.width,
+        this.viewCol + (this.viewWidth + this.tileSize - 1) / this.tileSize);
+  }
 
-          if (a.row < b.row) {
-            a.bottom = true;
-            b.top = true;
-          }
-          else {
-            a.top = true;
-            b.bottom = true;
-          }
-        }
-      }
+  // returns the row just past the last one the camera can see
+  int lastRow() {
+    if (!this.viewport) {
+      return this.height;
     }
+    return Math.min(this.height,
+        this.viewRow + (this.viewHeight + this.tileSize - 1) / this.tileSize);
+  }
 
-    GamePiece power = this.board.get(this.powerCol).get(this.powerRow);
-    power.powerStation = true;
-    power.powered = true;
+  // shows the board through a window of the given size in pixels, which the
+  // camera can scroll over with w, a, s and d and zoom with + and -
+  void enableViewport(int viewWidth, int viewHeight) {
+    this.viewport = true;
+    this.viewWidth = viewWidth;
+    this.viewHeight = viewHeight;
+    this.moveCamera(this.viewRow, this.viewCol, this.tileSize);
+  }
 
-    for (GamePiece gp : this.nodes) {
-      int spins = rand.nextInt(4);
-      for (int i = 0; i < spins; i++) {
-        gp.rotate();
+  // points the camera at the given top left tile with the given tile size,
+  // keeping as much of the window on the board as it can, and draws the
+  // scene afresh
+  void moveCamera(int row, int col, int tileSize) {
+    this.tileSize = tileSize;
+    this.viewRow = Math.max(0, Math.min(row, this.height - this.viewHeight / tileSize));
+    this.viewCol = Math.max(0, Math.min(col, this.width - this.viewWidth / tileSize));
+    this.scene = null;
+  }
+
+  // moves the camera if the given key is one of the camera keys, returning
+  // whether it was
+  boolean cameraKey(String key) {
+    int rows = Math.max(1, this.viewHeight / this.tileSize / 4);
+    int cols = Math.max(1, this.viewWidth / this.tileSize / 4);
+    if (key.equals("w")) {
+      this.moveCamera(this.viewRow - rows, this.viewCol, this.tileSize);
+    }
+    else if (key.equals("s")) {
+      this.moveCamera(this.viewRow + rows, this.viewCol, this.tileSize);
+    }
+    else if (key.equals("a")) {
+      this.moveCamera(this.viewRow, this.viewCol - cols, this.tileSize);
+    }
+    else if (key.equals("d")) {
+      this.moveCamera(this.viewRow, this.viewCol + cols, this.tileSize);
+    }
+    else if (key.equals("+") || key.equals("=") || key.equals("-")) {
+      int zoom = 0;
+      while (zoom < ZOOMS.length - 1 && ZOOMS[zoom] < this.tileSize) {
+        zoom++;
       }
+      zoom = key.equals("-") ? Math.max(0, zoom - 1) : Math.min(ZOOMS.length - 1, zoom + 1);
+      int centerRow = this.viewRow + this.viewHeight / this.tileSize / 2;
+      int centerCol = this.viewCol + this.viewWidth / this.tileSize / 2;
+      this.moveCamera(centerRow - this.viewHeight / ZOOMS[zoom] / 2,
+          centerCol - this.viewWidth / ZOOMS[zoom] / 2, ZOOMS[zoom]);
     }
+    else {
+      return false;
+    }
+    return true;
   }
 
-  // draws the world state
-  public WorldScene makeScene() {
-    int tileSize = 40;
-    int wireWidth = 4;
-    Color wireColor = Color.LIGHT_GRAY;
-    WorldScene scene = new WorldScene(this.width * tileSize, this.height * tileSize);
-
-    for (int col = 0; col < this.width; col++) {
-      for (int row = 0; row < this.height; row++) {
-        GamePiece gp = this.board.get(col).get(row);
-        boolean isPowerStation = (gp.row == this.powerRow && gp.col == this.powerCol
-            && gp.powerStation);
-        if (gp.powered) {
-          wireColor = Color.YELLOW;
-        }
-        else {
-          wireColor = Color.LIGHT_GRAY;
-        }
-        WorldImage tile = gp.tileImage(tileSize, wireWidth, wireColor, isPowerStation);
-        scene.placeImageXY(tile, col * tileSize + tileSize / 2, row * tileSize + tileSize / 2);
-      }
+  // remembers that the tile at the given index needs to be drawn again; there
+  // is nothing to remember until a scene has been drawn
+  void markDirty(int index) {
+    if (this.scene != null && (this.dirtyBits[index >> 6] & (1L << index)) == 0) {
+      this.dirtyBits[index >> 6] |= 1L << index;
+      this.dirtyTiles[this.dirtyCount++] = index;
     }
-    return scene;
   }
 
   // handles all the mouse clicks
   // when the mouse is clicked, it rotates the tile and gives the wire the
   // appropriate color
   public void onMouseClicked(Posn pos) {
-    int tileSize = 40;
-    int col = pos.x / tileSize;
-    int row = pos.y / tileSize;
+    long start = EventMetrics.start();
+    if (this.recorder != null) {
+      this.recorder.click(pos.x, pos.y);
+    }
+    int col = pos.x / this.tileSize + this.viewCol;
+    int row = pos.y / this.tileSize + this.viewRow;
 
     if (col >= 0 && col < this.width && row >= 0 && row < this.height) {
-      this.board.get(col).get(row).rotate();
-      this.updatePower();
+      this.rotateAt(row, col);
       this.checkWin();
     }
+    EventMetrics.record(EventMetrics.CLICK, start);
   }
 
   // handles all the key clicks
-  // when the arrow keys are clicked, the power station movies
+  // when the arrow keys are clicked, the selected power station movies, 1 to
+  // 9 select a station and n the next one, l turns lighting mode on and off,
+  // i turns island mode on and off, and in viewport mode the camera keys
+  // move the camera
   public void onKeyEvent(String key) {
-    GamePiece current = this.board.get(this.powerCol).get(this.powerRow);
-    int newRow = this.powerRow;
-    int newCol = this.powerCol;
-
-    if (key.equals("up") && current.top && this.powerRow > 0) {
-      GamePiece neighbor = this.board.get(this.powerCol).get(this.powerRow - 1);
-      if (neighbor.bottom) {
-        newRow--;
-      }
+    long start = EventMetrics.start();
+    if (this.recorder != null) {
+      this.recorder.key(key);
     }
-    else if (key.equals("down") && current.bottom && this.powerRow < this.height - 1) {
-      GamePiece neighbor = this.board.get(this.powerCol).get(this.powerRow + 1);
-      if (neighbor.top) {
-        newRow++;
-      }
+    if (this.viewport && this.cameraKey(key)) {
+      EventMetrics.record(EventMetrics.KEY, start);
+      return;
+    }
+    if (key.equals("l")) {
+      this.setLighting(!this.lighting);
+    }
+    else if (key.equals("i")) {
+      this.setIslands(!this.showIslands);
+    }
+    else if (key.equals("u") && this.journal != null) {
+      this.journal.undo();
+    }
+    else if (key.equals("r") && this.journal != null) {
+      this.journal.redo();
+      this.checkWin();
+    }
+    else if (key.length() == 1 && key.charAt(0) >= '1' && key.charAt(0) <= '9'
+        && key.charAt(0) - '1' < this.stations.length) {
+      this.selectStation(key.charAt(0) - '1');
     }
-    else if (key.equals("left") && current.left && this.powerCol > 0) {
-      GamePiece neighbor = this.board.get(this.powerCol - 1).get(this.powerRow);
-      if (neighbor.right) {
-        newCol--;
+    else if (key.equals("n")) {
+      this.selectStation((this.selected + 1) % this.stations.length);
+    }
+    int from = this.stationIndex(this.selected);
+    int dir = key.equals("up") ? GamePiece.TOP : key.equals("right") ? GamePiece.RIGHT
+        : key.equals("down") ? GamePiece.BOTTOM : key.equals("left") ? GamePiece.LEFT : 0;
+
+    if (dir != 0 && (this.linksAt(from) & dir) != 0
+        && !this.pieceAt(this.neighborIndex(from, dir)).powerStation) {
+      int to = this.neighborIndex(from, dir);
+      this.moveStation(this.selected, to / this.width, to % this.width);
+      if (this.journal != null) {
+        this.journal.record(from, MoveJournal.station(dir));
       }
+      this.checkWin();
     }
-    else if (key.equals("right") && current.right && this.powerCol < this.width - 1) {
-      GamePiece neighbor = this.board.get(this.powerCol + 1).get(this.powerRow);
-      if (neighbor.left) {
-        newCol++;
+    EventMetrics.record(EventMetrics.KEY, start);
+  }
+
+  // returns the tile the given station is on; the first station's is kept in
+  // powerRow and powerCol
+  int stationIndex(int k) {
+    return k == 0 ? this.powerRow * this.width + this.powerCol : this.stations[k];
+  }
+
+  // returns which station is on the tile at the given index, or -1 if none
+  // is
+  int stationAt(int index) {
+    for (int k = 0; k < this.stations.length; k++) {
+      if (this.stationIndex(k) == index) {
+        return k;
       }
     }
+    return -1;
+  }
+
+  // makes the given station the one the arrow keys move
+  void selectStation(int k) {
+    this.selected = k;
+  }
+
+  // moves the first power station to the given tile, which must be wired to
+  // the tile it's on now
+  void moveStation(int row, int col) {
+    this.moveStation(0, row, col);
+  }
+
+  // moves the given power station to the given tile, which must be wired to
+  // the tile it's on now; both are then part of the same network, so the
+  // same tiles stay powered. If the new tile got its power from the station
+  // itself, only the directions power arrives from along the way between the
+  // two tiles turn around; if it got it from another station, it's cut off
+  // from that one's tree to become a root, with the station's old tree hung
+  // under it, and only the tiles that were under it change station
+  void moveStation(int k, int row, int col) {
+    int from = this.stationIndex(k);
+    int to = row * this.width + col;
+    this.markDirty(from);
+    this.markDirty(to);
+    this.pieceAt(from).powerStation = false;
+    this.pieceAt(to).powerStation = true;
+    this.stations[k] = to;
+    if (k == 0) {
+      this.powerRow = row;
+      this.powerCol = col;
+    }
 
-    if (newRow != this.powerRow || newCol != this.powerCol) {
-      current.powerStation = false;
-      this.board.get(newCol).get(newRow).powerStation = true;
-      this.powerRow = newRow;
-      this.powerCol = newCol;
+    if (this.powerValid && this.pieceAt(to).powered) {
+      int root = to;
+      while (this.powerParent[root] != 0) {
+        root = this.neighborIndex(root, this.powerParent[root]);
+      }
+      if (root == from) {
+        int current = to;
+        int dir = this.powerParent[current];
+        this.powerParent[current] = 0;
+        while (dir != 0) {
+          int next = this.neighborIndex(current, dir);
+          int nextDir = this.powerParent[next];
+          this.powerParent[next] = (byte) GamePiece.opposite(dir);
+          current = next;
+          dir = nextDir;
+        }
+      }
+      else {
+        this.powerParent[to] = 0;
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if (this.neighborIndex(from, dir) == to) {
+            this.powerParent[from] = (byte) dir;
+          }
+        }
+        this.setFeeder(to, k);
+      }
+      if (this.lighting) {
+        this.computeDistances();
+      }
+    }
+    else {
       this.updatePower();
-      this.checkWin();
     }
   }
 
+  // makes the given station the one feeding the tile at the given index and
+  // every tile that gets its power through it
+  void setFeeder(int index, int k) {
+    int[] queue = this.powerCut;
+    int size = 0;
+    queue[size++] = index;
+    for (int head = 0; head < size; head++) {
+      int current = queue[head];
+      this.feeder[current] = k;
+      this.markDirty(current);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int next = this.neighborIndex(current, dir);
+        if (next >= 0 && this.powerParent[next] == GamePiece.opposite(dir)
+            && this.pieceAt(next).powered) {
+          queue[size++] = next;
+        }
+      }
+    }
+  }
+
+  // ends a frame for the event metrics
+  public void onTick() {
+    long start = EventMetrics.start();
+    EventMetrics.tick();
+    EventMetrics.record(EventMetrics.TICK, start);
+  }
+
   // updates the state of a game piece depending on if it is connected to a power
   // station or not
   void updatePower() {
+    long started = EventMetrics.start();
+    this.powerBuffers();
+    this.repowering = true;
     for (ArrayList<GamePiece> column : this.board) {
       for (GamePiece gp : column) {
-        gp.powered = false;
+        if (gp.powered) {
+          int index = gp.row * this.width + gp.col;
+          this.powerBefore[index >> 6] |= 1L << index;
+        }
+        this.setPowered(gp, false);
       }
     }
 
-    GamePiece start = this.board.get(this.powerCol).get(this.powerRow);
-    this.dfsPower(start);
+    Arrays.fill(this.powerParent, (byte) 0);
+    this.stations[0] = this.stationIndex(0);
+    for (int k = 0; k < this.stations.length; k++) {
+      GamePiece gp = this.pieceAt(this.stations[k]);
+      this.setPowered(gp, true);
+      this.feeder[this.stations[k]] = k;
+      this.powerStack[k] = this.stations[k];
+    }
+    this.spreadPower(0, this.stations.length);
+    this.repowering = false;
+    if (this.stations.length > 1) {
+      this.scene = null;
+    }
+
+    // counted afresh, since tiles whose flags were set directly throw off
+    // the count setPowered keeps
+    int count = 0;
+    for (ArrayList<GamePiece> column : this.board) {
+      for (GamePiece gp : column) {
+        int index = gp.row * this.width + gp.col;
+        if (gp.powered != ((this.powerBefore[index >> 6] & (1L << index)) != 0)) {
+          this.markDirty(index);
+        }
+        if (gp.powered) {
+          count++;
+        }
+      }
+    }
+    this.poweredCount = count;
+    Arrays.fill(this.powerBefore, 0L);
+    this.powerValid = true;
+    if (this.lighting) {
+      this.computeDistances();
+    }
+    EventMetrics.record(EventMetrics.UPDATE_POWER, started);
   }
 
-  // uses depth first search to light up tiles that are connected to the power
-  // station
+  // lights up the tiles connected to the given tile as if it were the first
+  // power station
   void dfsPower(GamePiece gp) {
-    gp.powered = true;
+    this.powerBuffers();
+    int index = gp.row * this.width + gp.col;
+    this.setPowered(gp, true);
+    this.powerParent[index] = 0;
+    this.feeder[index] = 0;
+    this.spreadPower(index);
+  }
+
+  // powers every unpowered tile that can be reached from the already powered
+  // tile at the given index
+  void spreadPower(int index) {
+    this.powerStack[0] = index;
+    this.spreadPower(0, 1);
+  }
 
-    if (gp.top && gp.row > 0) {
-      GamePiece neighbor = this.board.get(gp.col).get(gp.row - 1);
-      if (neighbor.bottom && !neighbor.powered) {
-        dfsPower(neighbor);
+  // powers every unpowered tile that can be reached from the already powered
+  // tiles queued in powerStack between the given positions, breadth first,
+  // remembering for each one the direction of the tile it got its power from
+  // and passing on which station that tile's power came from; with every
+  // station queued, each tile ends up fed by a station nearest to it along
+  // the wires, in one pass however many stations there are. Each tile is
+  // queued at most once, so width * height is always enough room
+  void spreadPower(int head, int tail) {
+    int[] queue = this.powerStack;
+    while (head < tail) {
+      int current = queue[head++];
+      int links = this.linksAt(current);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((links & dir) != 0) {
+          int next = this.neighborIndex(current, dir);
+          GamePiece neighbor = this.pieceAt(next);
+          if (!neighbor.powered) {
+            this.setPowered(neighbor, true);
+            this.powerParent[next] = (byte) GamePiece.opposite(dir);
+            this.feeder[next] = this.feeder[current];
+            queue[tail++] = next;
+          }
+        }
       }
     }
+  }
 
-    if (gp.bottom && gp.row < this.height - 1) {
-      GamePiece neighbor = this.board.get(gp.col).get(gp.row + 1);
-      if (neighbor.top && !neighbor.powered) {
-        dfsPower(neighbor);
+  // rotates the tile at the given position and brings the powered tiles up to
+  // date by only revisiting the part of the network the rotation changed
+  void rotateAt(int row, int col) {
+    long start = EventMetrics.start();
+    int index = row * this.width + col;
+    this.turnAt(index, 1);
+    if (this.journal != null) {
+      this.journal.record(index, MoveJournal.ROTATE);
+    }
+    EventMetrics.record(EventMetrics.ROTATE, start);
+  }
+
+  // turns the tile at the given index the given number of quarter turns
+  // clockwise and brings the powered tiles up to date the way rotateAt does
+  void turnAt(int index, int turns) {
+    int before = this.linksAt(index);
+    GamePiece gp = this.pieceAt(index);
+    for (int i = 0; i < turns; i++) {
+      gp.rotate();
+    }
+    this.markDirty(index);
+    if (this.solution != null) {
+      this.checkRotation(index, this.pieceAt(index).mask());
+    }
+    if (this.showIslands) {
+      this.islands.update(index, gp.mask());
+      for (int i = 0; i < this.islands.changedCount; i++) {
+        this.markDirty(this.islands.changed[i]);
       }
     }
 
-    if (gp.left && gp.col > 0) {
-      GamePiece neighbor = this.board.get(gp.col - 1).get(gp.row);
-      if (neighbor.right && !neighbor.powered) {
-        dfsPower(neighbor);
+    if (this.powerValid) {
+      this.updatePowerAt(index, before);
+      if (this.lighting) {
+        this.updateDistancesAt(index);
       }
     }
+    else {
+      this.updatePower();
+    }
+  }
 
-    if (gp.right && gp.col < this.width - 1) {
-      GamePiece neighbor = this.board.get(gp.col + 1).get(gp.row);
-      if (neighbor.left && !neighbor.powered) {
-        dfsPower(neighbor);
+  // updates power after the tile at the given index rotated away from the
+  // neighbors in before: every tile that got its power through a wire that
+  // came apart is unpowered, then anything still touching a powered tile is
+  // lit again along with whatever the new wires reach
+  void updatePowerAt(int index, int before) {
+    GamePiece gp = this.pieceAt(index);
+    int lost = before & ~this.linksAt(index);
+    int cut = 0;
+
+    if (gp.powered && lost != 0) {
+      if ((lost & this.powerParent[index]) != 0) {
+        cut = this.cutPower(index, cut);
+      }
+      else {
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if ((lost & dir) != 0) {
+            int next = this.neighborIndex(index, dir);
+            if (this.pieceAt(next).powered && this.powerParent[next] == GamePiece.opposite(dir)) {
+              cut = this.cutPower(next, cut);
+            }
+          }
+        }
       }
     }
+
+    for (int i = 0; i < cut; i++) {
+      this.reconnectPower(this.powerCut[i]);
+    }
+    this.reconnectPower(index);
   }
 
-  // checks if the game is won based on whether or not all the tiles are yellow
-  void checkWin() {
+  // unpowers the tile at the given index and every tile that got its power
+  // through it, adding them to powerCut after the first count entries, which
+  // doubles as the queue of tiles still to visit
+  int cutPower(int index, int count) {
+    int[] cut = this.powerCut;
+    int visited = count;
+    this.setPowered(this.pieceAt(index), false);
+    this.powerParent[index] = 0;
+    cut[count++] = index;
+
+    while (visited < count) {
+      int current = cut[visited++];
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int next = this.neighborIndex(current, dir);
+        if (next >= 0 && this.powerParent[next] == GamePiece.opposite(dir)
+            && this.pieceAt(next).powered) {
+          this.setPowered(this.pieceAt(next), false);
+          this.powerParent[next] = 0;
+          cut[count++] = next;
+        }
+      }
+    }
+    return count;
+  }
+
+  // powers whatever the tile at the given index now connects to: a powered
+  // tile passes its power on, an unpowered one takes it from any powered
+  // neighbor it links to
+  void reconnectPower(int index) {
+    if (this.pieceAt(index).powered) {
+      this.spreadPower(index);
+      return;
+    }
+
+    int links = this.linksAt(index);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((links & dir) != 0) {
+        int next = this.neighborIndex(index, dir);
+        if (this.pieceAt(next).powered) {
+          this.spreadPower(next);
+          return;
+        }
+      }
+    }
+  }
+
+  // powers or unpowers the given tile, keeping poweredCount in step
+  void setPowered(GamePiece gp, boolean powered) {
+    if (gp.powered != powered) {
+      gp.powered = powered;
+      this.poweredCount += powered ? 1 : -1;
+      if (!this.repowering) {
+        this.markDirty(gp.row * this.width + gp.col);
+      }
+    }
+  }
+
+  // returns the directions in which the tile at the given index has a wire
+  // that meets a wire from its neighbor
+  int linksAt(int index) {
+    int row = index / this.width;
+    int col = index % this.width;
+    GamePiece gp = this.board.get(col).get(row);
+    int links = 0;
+
+    if (gp.top && row > 0 && this.board.get(col).get(row - 1).bottom) {
+      links |= GamePiece.TOP;
+    }
+    if (gp.right && col < this.width - 1 && this.board.get(col + 1).get(row).left) {
+      links |= GamePiece.RIGHT;
+    }
+    if (gp.bottom && row < this.height - 1 && this.board.get(col).get(row + 1).top) {
+      links |= GamePiece.BOTTOM;
+    }
+    if (gp.left && col > 0 && this.board.get(col - 1).get(row).right) {
+      links |= GamePiece.LEFT;
+    }
+    return links;
+  }
+
+  // returns the index of the tile next to the given one in the given
+  // direction, or -1 if that would be off the board
+  int neighborIndex(int index, int dir) {
+    int row = index / this.width;
+    int col = index % this.width;
+    if (dir == GamePiece.TOP) {
+      return row > 0 ? index - this.width : -1;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return col < this.width - 1 ? index + 1 : -1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return row < this.height - 1 ? index + this.width : -1;
+    }
+    else {
+      return col > 0 ? index - 1 : -1;
+    }
+  }
+
+  // returns the tile at the given index
+  GamePiece pieceAt(int index) {
+    return this.board.get(index % this.width).get(index / this.width);
+  }
+
+  // makes sure the arrays used to propagate power fit the board, only
+  // allocating new ones when the board size changes; a tile is visited at
+  // most once per pass, so width * height is always enough room
+  void powerBuffers() {
+    int tiles = this.width * this.height;
+    if (this.powerStack == null || this.powerStack.length != tiles) {
+      this.powerStack = new int[tiles];
+      this.powerCut = new int[tiles];
+      this.powerParent = new byte[tiles];
+      this.feeder = new int[tiles];
+      this.powerBefore = new long[(tiles + 63) >> 6];
+      this.powerValid = false;
+    }
+  }
+
+  // puts every tile back the way the given masks, packed two to a byte, say,
+  // and the power stations on the tiles at the given indices, then powers
+  // the board afresh
+  void restore(byte[] packedMasks, int[] stations) {
     for (ArrayList<GamePiece> column : this.board) {
       for (GamePiece gp : column) {
-        if (!gp.powered) {
-          return;
+        int index = gp.row * this.width + gp.col;
+        gp.setMask((packedMasks[index >> 1] >> ((index & 1) << 2)) & 0xF);
+        gp.powerStation = false;
+      }
+    }
+    for (int k = 0; k < stations.length; k++) {
+      this.pieceAt(stations[k]).powerStation = true;
+      this.stations[k] = stations[k];
+    }
+    this.powerRow = stations[0] / this.width;
+    this.powerCol = stations[0] % this.width;
+    this.scene = null;
+    this.updatePower();
+    this.setSolution(this.solution);
+    if (this.showIslands) {
+      this.labelIslands();
+    }
+  }
+
+  // turns island mode on or off
+  void setIslands(boolean on) {
+    this.showIslands = on;
+    this.scene = null;
+    if (on) {
+      this.labelIslands();
+    }
+  }
+
+  // labels the islands of the whole board afresh
+  void labelIslands() {
+    if (this.islands == null || this.islands.masks.length != this.width * this.height) {
+      this.islands = new IslandLabeler(this.width, this.height, ForkJoinPool.commonPool());
+    }
+    for (ArrayList<GamePiece> column : this.board) {
+      for (GamePiece gp : column) {
+        this.islands.masks[gp.row * this.width + gp.col] = (byte) gp.mask();
+      }
+    }
+    this.islands.label();
+  }
+
+  // returns which of ISLAND_COLORS the tile at the given index is drawn in
+  // island mode: the powered island's color, the lone tiles' color, or one
+  // picked by its island's id
+  int islandShade(int index) {
+    if (this.pieceAt(index).powered) {
+      return 1;
+    }
+    if (this.islands.sizeOf(index) == 1) {
+      return 0;
+    }
+    long mixed = ParallelBoardGenerator.mix(this.islands.islandOf(index));
+    return 2 + (int) ((mixed >>> 1) % (ISLAND_COLORS.length - 2));
+  }
+
+  // turns lighting mode on or off
+  void setLighting(boolean on) {
+    this.lighting = on;
+    this.scene = null;
+    if (on) {
+      this.computeDistances();
+    }
+  }
+
+  // makes sure the scratch space for the distances fits the board
+  void lightBuffers() {
+    int tiles = this.width * this.height;
+    if (this.dist == null || this.dist.length != tiles) {
+      this.dist = new int[tiles];
+      this.lightState = new byte[tiles];
+      this.lightTouched = new int[tiles];
+      this.lightHeap = new long[64];
+    }
+  }
+
+  // works out every tile's distance from the nearest station with one breadth
+  // first search along the wires from all of them, and the radius, if it
+  // isn't known yet, from the solution: half its diameter, rounded down, plus one
+  void computeDistances() {
+    this.lightBuffers();
+    if (this.radius == 0 && this.solution != null) {
+      this.radius = PackedBoard.diameter(this.solution, this.width, this.height) / 2 + 1;
+    }
+    Arrays.fill(this.dist, FAR);
+    this.litCount = 0;
+    int[] queue = this.lightTouched;
+    int head = 0;
+    int tail = 0;
+    for (int k = 0; k < this.stations.length; k++) {
+      int station = this.stationIndex(k);
+      this.setDist(station, 0);
+      queue[tail++] = station;
+    }
+    while (head < tail) {
+      int current = queue[head++];
+      int links = this.linksAt(current);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((links & dir) != 0) {
+          int next = this.neighborIndex(current, dir);
+          if (this.dist[next] == FAR) {
+            this.setDist(next, this.dist[current] + 1);
+            queue[tail++] = next;
+          }
         }
       }
     }
-    this.endOfWorld("You win :)");
   }
 
-  // draws the "you win" message on the screen
-  public WorldScene lastScene(String msg) {
-    WorldScene scene = this.makeScene();
-    WorldImage message = new TextImage(msg, 24, FontStyle.BOLD, Color.GREEN);
-    scene.placeImageXY(message, this.width * 20, this.height * 20);
-    return scene;
+  // brings the distances up to date after the wires of the tile at the given
+  // index changed, only visiting the tiles whose distance changes and their
+  // neighbors
+  //
+  // first every tile that no longer has a neighbor one step closer to the
+  // station than it is, or only has ones that are themselves in that state,
+  // loses its distance; tiles are checked closest first, starting with the
+  // changed tile and its neighbors, so a tile's closer neighbors are settled
+  // before it is. Then those tiles, and the changed tile and its neighbors,
+  // whose new wires may give others a shorter way, pass distances on
+  // closest first until nothing gets any closer
+  void updateDistancesAt(int index) {
+    int touched = 0;
+    this.lightHeapSize = 0;
+    for (int dir = 0; dir <= GamePiece.LEFT; dir = dir == 0 ? 1 : dir << 1) {
+      int tile = dir == 0 ? index : this.neighborIndex(index, dir);
+      if (tile >= 0 && this.dist[tile] != FAR && this.dist[tile] != 0
+          && this.lightState[tile] == 0) {
+        this.lightState[tile] = 1;
+        this.lightTouched[touched++] = tile;
+        this.heapPush((long) this.dist[tile] << 32 | tile);
+      }
+    }
+
+    while (this.lightHeapSize > 0) {
+      int tile = (int) this.heapPop();
+      if (this.hasCloserNeighbor(tile)) {
+        this.lightState[tile] = 2;
+      }
+      else {
+        this.lightState[tile] = 3;
+        int links = this.linksAt(tile);
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if ((links & dir) != 0) {
+            int next = this.neighborIndex(tile, dir);
+            if (this.lightState[next] == 0 && this.dist[next] == this.dist[tile] + 1) {
+              this.lightState[next] = 1;
+              this.lightTouched[touched++] = next;
+              this.heapPush((long) this.dist[next] << 32 | next);
+            }
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < touched; i++) {
+      int tile = this.lightTouched[i];
+      if (this.lightState[tile] == 3) {
+        this.setDist(tile, FAR);
+      }
+    }
+    for (int i = 0; i < touched; i++) {
+      int tile = this.lightTouched[i];
+      if (this.lightState[tile] == 3) {
+        int best = FAR;
+        int links = this.linksAt(tile);
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if ((links & dir) != 0) {
+            int next = this.neighborIndex(tile, dir);
+            if (this.dist[next] != FAR && this.lightState[next] != 3) {
+              best = Math.min(best, this.dist[next] + 1);
+            }
+          }
+        }
+        if (best != FAR) {
+          this.setDist(tile, best);
+          this.heapPush((long) best << 32 | tile);
+        }
+      }
+      this.lightState[tile] = 0;
+    }
+    for (int dir = 0; dir <= GamePiece.LEFT; dir = dir == 0 ? 1 : dir << 1) {
+      int tile = dir == 0 ? index : this.neighborIndex(index, dir);
+      if (tile >= 0 && this.dist[tile] != FAR) {
+        this.heapPush((long) this.dist[tile] << 32 | tile);
+      }
+    }
+
+    while (this.lightHeapSize > 0) {
+      long top = this.heapPop();
+      int tile = (int) top;
+      if ((int) (top >>> 32) == this.dist[tile]) {
+        int links = this.linksAt(tile);
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          if ((links & dir) != 0) {
+            int next = this.neighborIndex(tile, dir);
+            if (this.dist[tile] + 1 < this.dist[next]) {
+              this.setDist(next, this.dist[tile] + 1);
+              this.heapPush((long) this.dist[next] << 32 | next);
+            }
+          }
+        }
+      }
+    }
   }
 
-}
+  // does the tile at the given index have a neighbor wired to it that is one
+  // step closer to the station and hasn't lost its distance?
+  boolean hasCloserNeighbor(int index) {
+    int links = this.linksAt(index);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((links & dir) != 0) {
+        int next = this.neighborIndex(index, dir);
+        if (this.lightState[next] != 3 && this.dist[next] == this.dist[index] - 1) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
 
-// represents a single tile in the LightEmALl game
-class GamePiece {
-  int row;
-  int col;
-  public boolean left;
-  public boolean right;
-  public boolean top;
-  public boolean bottom;
-  public boolean powerStation;
-  public boolean powered;
-
-  GamePiece(int row, int col) {
-    this.row = row;
-    this.col = col;
-    this.left = false;
-    this.right = false;
-    this.top = false;
-    this.bottom = false;
-    this.powerStation = false;
-    this.powered = false;
-  }
-
-  // draws a single GamePiece as a tile
-  WorldImage tileImage(int size, int wireWidth, Color wireColor, boolean hasPowerStation) {
-    WorldImage image = new OverlayImage(
-        new RectangleImage(wireWidth, wireWidth, OutlineMode.SOLID, wireColor),
-        new OverlayImage(new RectangleImage(size, size, OutlineMode.OUTLINE, Color.BLACK),
-            new RectangleImage(size, size, OutlineMode.SOLID, Color.DARK_GRAY)));
-    WorldImage vWire = new RectangleImage(wireWidth, (size + 1) / 2, OutlineMode.SOLID, wireColor);
-    WorldImage hWire = new RectangleImage((size + 1) / 2, wireWidth, OutlineMode.SOLID, wireColor);
-
-    if (this.top) {
-      image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.TOP, vWire, 0, 0, image);
-    }
-    if (this.right) {
-      image = new OverlayOffsetAlign(AlignModeX.RIGHT, AlignModeY.MIDDLE, hWire, 0, 0, image);
-    }
-    if (this.bottom) {
-      image = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.BOTTOM, vWire, 0, 0, image);
-    }
-    if (this.left) {
-      image = new OverlayOffsetAlign(AlignModeX.LEFT, AlignModeY.MIDDLE, hWire, 0, 0, image);
-    }
-    if (hasPowerStation) {
-      image = new OverlayImage(
-          new OverlayImage(new StarImage(size / 3, 7, OutlineMode.OUTLINE, new Color(255, 128, 0)),
-              new StarImage(size / 3, 7, OutlineMode.SOLID, new Color(0, 255, 255))),
-          image);
-    }
-    return image;
-  }
-
-  // rotates the GamePiece tile clockwise if it is clicked
-  void rotate() {
-    boolean oldTop = this.top;
-    this.top = this.left;
-    this.left = this.bottom;
-    this.bottom = this.right;
-    this.right = oldTop;
+  // adds the given tile, keyed by distance, to the heap
+  void heapPush(long entry) {
+    if (this.lightHeapSize == this.lightHeap.length) {
+      this.lightHeap = Arrays.copyOf(this.lightHeap, this.lightHeapSize * 2);
+    }
+    int i = this.lightHeapSize++;
+    while (i > 0 && this.lightHeap[(i - 1) >> 1] > entry) {
+      this.lightHeap[i] = this.lightHeap[(i - 1) >> 1];
+      i = (i - 1) >> 1;
+    }
+    this.lightHeap[i] = entry;
   }
-}
 
-// represents an edge in the game
-class Edge {
-  GamePiece from;
-  GamePiece to;
-  int weight;
+  // removes and returns the closest tile in the heap
+  long heapPop() {
+    long top = this.lightHeap[0];
+    long last = this.lightHeap[--this.lightHeapSize];
+    int i = 0;
+    int size = this.lightHeapSize;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && this.lightHeap[child + 1] < this.lightHeap[child]) {
+        child++;
+      }
+      if (this.lightHeap[child] >= last) {
+        break;
+      }
+      this.lightHeap[i] = this.lightHeap[child];
+      i = child;
+    }
+    this.lightHeap[i] = last;
+    return top;
+  }
 
-  Edge(GamePiece from, GamePiece to, int weight) {
-    this.from = from;
-    this.to = to;
-    this.weight = weight;
+  // sets the distance of the tile at the given index, keeping count of the
+  // lit tiles and redrawing the tile if its shade changes
+  void setDist(int index, int dist) {
+    int before = this.shade(index);
+    if (before > 0) {
+      this.litCount--;
+    }
+    this.dist[index] = dist;
+    int after = this.shade(index);
+    if (after > 0) {
+      this.litCount++;
+    }
+    if (before != after) {
+      this.markDirty(index);
+    }
   }
-}
 
-// helps keep track of which pieces are connected when building the game board
-class UnionFind {
-  HashMap<GamePiece, GamePiece> parent = new HashMap<>();
+  // returns the shade the tile at the given index is lit in, from 1 for the
+  // brightest to SHADES.length - 1 at radius wires from the station, or 0
+  // if it's out of reach; with no radius, every tile power reaches is lit
+  int shade(int index) {
+    int dist = this.dist[index];
+    int reach = this.radius > 0 ? this.radius : this.width * this.height;
+    if (dist > reach) {
+      return 0;
+    }
+    return 1 + (int) ((long) dist * (SHADES.length - 1) / (reach + 1));
+  }
 
-  // creates a new set for the given tile
-  void makeSet(GamePiece item) {
-    parent.put(item, item);
+  // remembers the given solved masks, or forgets the solution if it's null,
+  // and finds the tiles that don't match them yet
+  void setSolution(byte[] solution) {
+    this.solution = solution;
+    if (solution == null) {
+      this.misrotated = null;
+      this.misrotatedAt = null;
+      this.misrotatedCount = 0;
+      return;
+    }
+    int tiles = this.width * this.height;
+    if (this.misrotated == null || this.misrotated.length != tiles) {
+      this.misrotated = new int[tiles];
+      this.misrotatedAt = new int[tiles];
+    }
+    Arrays.fill(this.misrotatedAt, -1);
+    this.misrotatedCount = 0;
+    for (ArrayList<GamePiece> column : this.board) {
+      for (GamePiece gp : column) {
+        this.checkRotation(gp.row * this.width + gp.col, gp.mask());
+      }
+    }
+  }
+
+  // adds the tile at the given index, which has the given mask, to the
+  // misrotated tiles or takes it out, depending on whether its mask matches
+  // the solution
+  void checkRotation(int index, int mask) {
+    boolean wrong = mask != this.solution[index];
+    int at = this.misrotatedAt[index];
+    if (wrong && at < 0) {
+      this.misrotatedAt[index] = this.misrotatedCount;
+      this.misrotated[this.misrotatedCount++] = index;
+    }
+    else if (!wrong && at >= 0) {
+      int last = this.misrotated[--this.misrotatedCount];
+      this.misrotated[at] = last;
+      this.misrotatedAt[last] = at;
+      this.misrotatedAt[index] = -1;
+    }
+  }
+
+  // returns how many clicks the tile at the given position needs to match
+  // the solution, or -1 if the solution isn't known; the generated solution
+  // is only one of the ways some boards can be solved
+  int turnsNeeded(int row, int col) {
+    if (this.solution == null) {
+      return -1;
+    }
+    int index = row * this.width + col;
+    return GamePiece.turns(this.pieceAt(index).mask(), this.solution[index]);
+  }
+
+  // returns the index of a tile that doesn't match the solution yet, or -1
+  // if they all do or the solution isn't known
+  int hint() {
+    return this.misrotatedCount > 0 ? this.misrotated[0] : -1;
+  }
+
+  // turns every tile the way BoardSolver says solves the board, returning
+  // false and leaving the board alone if it can't be solved; the solved board
+  // is where the journal, if any, starts over from
+  boolean autoSolve() {
+    BoardSolver solver = new BoardSolver(this);
+    if (!solver.solve()) {
+      return false;
+    }
+
+    byte[] turns = solver.turns();
+    for (int index = 0; index < turns.length; index++) {
+      for (int i = 0; i < turns[index]; i++) {
+        this.pieceAt(index).rotate();
+      }
+    }
+    this.setSolution(this.solution);
+    this.scene = null;
+    this.updatePower();
+    if (this.showIslands) {
+      this.labelIslands();
+    }
+    if (this.journal != null) {
+      this.journal.reset();
+    }
+    return true;
   }
 
-  // finds the root of the set that the tile belongs to
-  GamePiece find(GamePiece item) {
-    if (parent.get(item) != item) {
-      parent.put(item, find(parent.get(item))); // path compression
+  // checks if the game is won based on whether or not all the tiles are yellow
+  void checkWin() {
+    long start = EventMetrics.start();
+    if (this.allPowered() && (!this.lighting || this.litCount == this.width * this.height)) {
+      this.endOfWorld("You win :)");
     }
-    return parent.get(item);
+    EventMetrics.record(EventMetrics.CHECK_WIN, start);
   }
 
-  // connects the sets that contain the two given tiles
-  void union(GamePiece a, GamePiece b) {
-    GamePiece rootA = find(a);
-    GamePiece rootB = find(b);
-    if (rootA != rootB) {
-      parent.put(rootA, rootB);
+  // returns a hash of everything about the board the player can change: each
+  // tile's wires and whether it's powered, and where the power stations are
+  long stateHash() {
+    long hash = this.powerRow * 31L + this.powerCol;
+    for (int k = 1; k < this.stations.length; k++) {
+      hash = hash * 31L + this.stations[k];
+    }
+    for (int index = 0; index < this.width * this.height; index++) {
+      GamePiece gp = this.pieceAt(index);
+      hash = hash * 1_000_003L + (gp.mask() | (gp.powered ? 16 : 0));
     }
+    return hash;
+  }
+
+  // is every tile on the board powered?
+  boolean allPowered() {
+    return this.poweredCount == this.width * this.height;
+  }
+
+  // draws the "you win" message on the screen
+  public WorldScene lastScene(String msg) {
+    WorldScene scene = this.makeScene();
+    this.scene = null;
+    WorldImage message = new TextImage(msg, 24, FontStyle.BOLD, Color.GREEN);
+    scene.placeImageXY(message, this.sceneWidth() / 2, this.sceneHeight() / 2);
+    return scene;
   }
+
 }
 
 // examples class
@@ -382,6 +1333,15 @@ class Examples {
   }
 }
 
+// a board far bigger than the window, seen through a scrolling camera
+class ExamplesViewport {
+  void testRunGame(Tester t) {
+    LightEmAll game = new LightEmAll(1000, 1000);
+    game.enableViewport(800, 600);
+    game.bigBang(800, 600, 0.1);
+  }
+}
+
 class ExamplesGame1 {
   void testRunGame(Tester t) {
     LightEmAll game = new LightEmAll(3, 3);
@@ -415,6 +1375,11 @@ class Tests {
   LightEmAll game2 = new LightEmAll(2, 2);
 
   void initData() {
+    this.gp1 = new GamePiece(1, 2);
+    this.gp2 = new GamePiece(2, 2);
+    this.gp3 = new GamePiece(2, 2);
+    this.gp4 = new GamePiece(2, 3);
+
     // gp1 is a ┌ shape which is not powered
     this.gp1.right = true;
     this.gp1.bottom = true;
@@ -516,6 +1481,417 @@ class Tests {
     }
   }
 
+  // tests that makeRandomBoard lays out the same board for the same seed
+  void testMakeRandomBoardSeed(Tester t) {
+    LightEmAll testGame = new LightEmAll(3, 3);
+    testGame.makeRandomBoard(new Random(2));
+    int[] expected = new int[] {4, 3, 4, 13, 15, 2, 1, 3, 8};
+    for (int i = 0; i < expected.length; i++) {
+      t.checkExpect(testGame.pieceAt(i).mask(), expected[i]);
+    }
+
+    LightEmAll other = new LightEmAll(17, 5);
+    other.makeRandomBoard(new Random(9));
+    testGame = new LightEmAll(17, 5);
+    testGame.makeRandomBoard(new Random(9));
+    t.checkExpect(testGame.board, other.board);
+  }
+
+  // tests for ParallelBoardGenerator
+  void testParallelBoardGenerator(Tester t) {
+    ForkJoinPool one = new ForkJoinPool(1);
+    ForkJoinPool three = new ForkJoinPool(3);
+    ParallelBoardGenerator single = new ParallelBoardGenerator(one);
+    ParallelBoardGenerator many = new ParallelBoardGenerator(three);
+
+    byte[] tree = many.spanningTree(37, 29, 5);
+    PackedBoard packed = new PackedBoard(37, 29);
+    packed.masks = tree;
+    packed.setStation(0, true);
+    packed.updatePower();
+    int wires = 0;
+    boolean matched = true;
+    for (int i = 0; i < tree.length; i++) {
+      matched = matched && packed.linksAt(i) == packed.mask(i);
+      wires += Integer.bitCount(tree[i]);
+    }
+    t.checkExpect(matched, true);
+    t.checkExpect(packed.allPowered(), true);
+    t.checkExpect(wires, 2 * (37 * 29 - 1));
+
+    t.checkExpect(many.spanningTree(37, 29, 5), single.spanningTree(37, 29, 5));
+    t.checkExpect(many.generate(300, 301, 8).masks, single.generate(300, 301, 8).masks);
+    t.checkExpect(Arrays.equals(many.generate(20, 20, 8).masks, many.generate(20, 20, 9).masks),
+        false);
+    t.checkExpect(single.spanningTree(1, 1, 3), new byte[] {0});
+    one.shutdown();
+    three.shutdown();
+  }
+
+  // tests for the BoardGenerators
+  void testBoardGenerators(Tester t) {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    BoardGenerator[] generators = new BoardGenerator[] {new KruskalGenerator(),
+        new PrimGenerator(), new DepthFirstGenerator(), new WilsonGenerator(),
+        new ParallelBoardGenerator(pool)};
+    int[][] sizes = new int[][] {{1, 1}, {1, 6}, {6, 1}, {7, 5}, {40, 23}};
+    for (BoardGenerator generator : generators) {
+      for (int[] size : sizes) {
+        byte[] tree = generator.spanningTree(size[0], size[1], new Random(3));
+        PackedBoard packed = new PackedBoard(size[0], size[1]);
+        packed.masks = tree;
+        packed.setStation(tree.length - 1, true);
+        packed.updatePower();
+        int wires = 0;
+        boolean matched = true;
+        for (int i = 0; i < tree.length; i++) {
+          matched = matched && packed.linksAt(i) == packed.mask(i);
+          wires += Integer.bitCount(tree[i]);
+        }
+        t.checkExpect(matched, true);
+        t.checkExpect(packed.allPowered(), true);
+        t.checkExpect(wires, 2 * (tree.length - 1));
+        t.checkExpect(generator.spanningTree(size[0], size[1], new Random(3)), tree);
+      }
+      t.checkExpect(Arrays.equals(generator.spanningTree(20, 20, new Random(3)),
+          generator.spanningTree(20, 20, new Random(4))), false);
+
+      LightEmAll testGame = new LightEmAll(9, 8, 5, generator);
+      t.checkExpect(testGame.solution,
+          PackedBoard.random(generator, 9, 8, 0, 0, new Random(5)).solution);
+      t.checkExpect(testGame.autoSolve(), true);
+    }
+    pool.shutdown();
+
+    // the game's own boards still come from Kruskal's algorithm
+    t.checkExpect(new LightEmAll(9, 8, 5).board,
+        new LightEmAll(9, 8, 5, new KruskalGenerator()).board);
+    // depth-first trees wind far longer paths than Kruskal trees, which wind
+    // longer ones than Prim trees
+    int kruskal = PackedBoard.diameter(
+        new KruskalGenerator().spanningTree(60, 60, new Random(1)), 60, 60);
+    t.checkExpect(PackedBoard.diameter(
+        new DepthFirstGenerator().spanningTree(60, 60, new Random(1)), 60, 60) > 3 * kruskal,
+        true);
+    t.checkExpect(PackedBoard.diameter(
+        new PrimGenerator().spanningTree(60, 60, new Random(1)), 60, 60) < kruskal, true);
+  }
+
+  // labels the islands of the given board one flood at a time, each with the
+  // smallest index on it
+  int[] floodIslands(PackedBoard packed) {
+    int[] label = new int[packed.masks.length];
+    Arrays.fill(label, -1);
+    int[] stack = new int[packed.masks.length];
+    for (int i = 0; i < label.length; i++) {
+      if (label[i] < 0) {
+        int size = 0;
+        label[i] = i;
+        stack[size++] = i;
+        while (size > 0) {
+          int current = stack[--size];
+          int links = packed.linksAt(current);
+          for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+            int next = packed.neighborIndex(current, dir);
+            if ((links & dir) != 0 && label[next] < 0) {
+              label[next] = i;
+              stack[size++] = next;
+            }
+          }
+        }
+      }
+    }
+    return label;
+  }
+
+  // does the labeler split the board into the same islands as the given
+  // labels, with the right sizes?
+  boolean sameIslands(IslandLabeler islands, int[] expected) {
+    int[] ids = new int[expected.length];
+    int[] sizes = new int[expected.length];
+    Arrays.fill(ids, -1);
+    int count = 0;
+    for (int i = 0; i < expected.length; i++) {
+      sizes[expected[i]]++;
+      if (ids[expected[i]] < 0) {
+        ids[expected[i]] = islands.islandOf(i);
+        count++;
+      }
+    }
+    boolean same = count == islands.count;
+    int[] owner = new int[expected.length];
+    Arrays.fill(owner, -1);
+    for (int i = 0; i < expected.length; i++) {
+      int id = islands.islandOf(i);
+      same = same && id == ids[expected[i]] && islands.sizeOf(i) == sizes[expected[i]]
+          && (owner[id] < 0 || owner[id] == expected[i]);
+      owner[id] = expected[i];
+    }
+    return same;
+  }
+
+  // tests for IslandLabeler
+  void testIslandLabeler(Tester t) {
+    ForkJoinPool pool = new ForkJoinPool(3);
+    for (int seed = 0; seed < 4; seed++) {
+      PackedBoard packed = PackedBoard.random(13 + seed * 9, 31 - seed * 5, 0, 0,
+          new Random(seed));
+      IslandLabeler islands = new IslandLabeler(packed.width, packed.height, pool);
+      System.arraycopy(packed.masks, 0, islands.masks, 0, packed.masks.length);
+      int[] expected = this.floodIslands(packed);
+      for (int bands = 1; bands <= 7; bands += 3) {
+        islands.label(bands);
+        t.checkExpect(islands.label, expected);
+      }
+      int[] sizes = islands.islandSizes();
+      t.checkExpect(sizes.length, islands.count);
+      t.checkExpect(Arrays.stream(sizes).sum(), packed.masks.length);
+      t.checkExpect(sizes[0] >= sizes[sizes.length - 1], true);
+
+      Random rand = new Random(seed);
+      boolean same = true;
+      for (int move = 0; move < 400; move++) {
+        int index = rand.nextInt(packed.masks.length);
+        packed.rotate(index);
+        islands.update(index, packed.mask(index));
+        same = same && this.sameIslands(islands, this.floodIslands(packed));
+      }
+      t.checkExpect(same, true);
+    }
+
+    // a loop stays one island when a tile turns out of it, which relabels
+    // only that tile, and splits in two when a second one does
+    PackedBoard packed = new PackedBoard(3, 2);
+    packed.masks = new byte[] {GamePiece.RIGHT | GamePiece.BOTTOM,
+        GamePiece.LEFT | GamePiece.RIGHT, GamePiece.LEFT | GamePiece.BOTTOM,
+        GamePiece.TOP | GamePiece.RIGHT, GamePiece.LEFT | GamePiece.RIGHT,
+        GamePiece.LEFT | GamePiece.TOP};
+    IslandLabeler islands = new IslandLabeler(3, 2, pool);
+    System.arraycopy(packed.masks, 0, islands.masks, 0, 6);
+    islands.label();
+    t.checkExpect(islands.count, 1);
+    islands.update(1, GamePiece.TOP | GamePiece.BOTTOM);
+    t.checkExpect(islands.islandSizes(), new int[] {5, 1});
+    t.checkExpect(islands.changedCount, 1);
+    islands.update(4, GamePiece.TOP | GamePiece.BOTTOM);
+    t.checkExpect(islands.islandSizes(), new int[] {2, 2, 2});
+    t.checkExpect(islands.islandOf(0) == islands.islandOf(3), true);
+    t.checkExpect(islands.islandOf(0) == islands.islandOf(2), false);
+    t.checkExpect(islands.islandOf(1) == islands.islandOf(4), true);
+    islands.update(4, GamePiece.LEFT | GamePiece.RIGHT);
+    t.checkExpect(islands.islandSizes(), new int[] {5, 1});
+    t.checkExpect(islands.islandOf(0) == islands.islandOf(2), true);
+    pool.shutdown();
+
+    // island mode colors the powered island yellow, lone tiles gray and the
+    // rest by island
+    LightEmAll testGame = new LightEmAll(12, 10, 4);
+    testGame.makeScene();
+    testGame.onKeyEvent("i");
+    t.checkExpect(testGame.showIslands, true);
+    t.checkExpect(testGame.scene, null);
+    t.checkExpect(this.sameIslands(testGame.islands,
+        this.floodIslands(new PackedBoard(testGame))), true);
+    t.checkExpect(testGame.islandShade(0), 1);
+    t.checkExpect(testGame.islands.sizeOf(0), testGame.poweredCount);
+    boolean shaded = true;
+    for (int i = 0; i < 120; i++) {
+      int shade = testGame.islandShade(i);
+      shaded = shaded && (shade == 1) == testGame.pieceAt(i).powered
+          && (shade == 0) == (!testGame.pieceAt(i).powered && testGame.islands.sizeOf(i) == 1);
+    }
+    t.checkExpect(shaded, true);
+    testGame.makeScene();
+    t.checkExpect(testGame.sceneTiles.colors, LightEmAll.ISLAND_COLORS);
+    testGame.rotateAt(5, 5);
+    t.checkExpect(this.sameIslands(testGame.islands,
+        this.floodIslands(new PackedBoard(testGame))), true);
+    t.checkExpect(testGame.dirtyCount >= 1 + testGame.islands.changedCount, true);
+    testGame.onKeyEvent("i");
+    t.checkExpect(testGame.showIslands, false);
+    t.checkExpect(GamePiece.drawCells(4, LightEmAll.ISLAND_COLORS).length,
+        LightEmAll.ISLAND_COLORS.length + 1);
+  }
+
+  // tests for BoardSolver and autoSolve
+  void testBoardSolver(Tester t) {
+    for (int seed = 0; seed < 10; seed++) {
+      LightEmAll testGame = new LightEmAll(4 + seed * 3, 3 + seed * 2);
+      testGame.makeRandomBoard(new Random(seed));
+      t.checkExpect(testGame.autoSolve(), true);
+      t.checkExpect(testGame.allPowered(), true);
+    }
+
+    LightEmAll testGame = new LightEmAll(40, 40);
+    BoardSolver solver = new BoardSolver(testGame);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    BoardSolver found = solver.solveParallel(pool);
+    pool.shutdown();
+    PackedBoard packed = new PackedBoard(testGame);
+    packed.masks = found.solution();
+    packed.updatePower();
+    t.checkExpect(packed.allPowered(), true);
+
+    // a wire may lead off the board, as long as every tile gets power
+    packed = new PackedBoard(2, 1);
+    packed.setStation(0, true);
+    packed.masks = new byte[] {GamePiece.TOP | GamePiece.BOTTOM, GamePiece.RIGHT};
+    solver = new BoardSolver(packed);
+    t.checkExpect(solver.tight, false);
+    t.checkExpect(solver.solve(), true);
+    packed.masks = solver.solution();
+    packed.updatePower();
+    t.checkExpect(packed.allPowered(), true);
+
+    packed.masks = new byte[] {GamePiece.TOP, GamePiece.RIGHT};
+    solver = new BoardSolver(packed);
+    t.checkExpect(solver.tight, true);
+    t.checkExpect(solver.solve(), true);
+    t.checkExpect(solver.turns(), new byte[] {1, 2});
+
+    // the middle of three tiles can't reach both ends with one wire
+    packed = new PackedBoard(3, 1);
+    packed.setStation(0, true);
+    packed.masks = new byte[] {GamePiece.RIGHT | GamePiece.LEFT, GamePiece.TOP,
+        GamePiece.TOP | GamePiece.RIGHT};
+    t.checkExpect(new BoardSolver(packed).solve(), false);
+    packed.masks[1] = GamePiece.TOP | GamePiece.BOTTOM;
+    solver = new BoardSolver(packed);
+    t.checkExpect(solver.solve(), true);
+    packed.masks = solver.solution();
+    packed.updatePower();
+    t.checkExpect(packed.allPowered(), true);
+
+    // with a few spare wire ends a generated board is no longer tight
+    packed = PackedBoard.random(7, 6, 0, 0, new Random(5));
+    packed.masks[8] = 0xF;
+    packed.masks[30] = 0xF;
+    solver = new BoardSolver(packed);
+    t.checkExpect(solver.tight, false);
+    t.checkExpect(solver.solve(), true);
+    packed.masks = solver.solution();
+    packed.updatePower();
+    t.checkExpect(packed.allPowered(), true);
+
+    // a board with extra wires that isn't a tree can still be won
+    LightEmAll loose = new LightEmAll(2, 1);
+    loose.makeRandomBoard(new Random(1));
+    loose.pieceAt(0).setMask(GamePiece.TOP | GamePiece.BOTTOM);
+    loose.pieceAt(1).setMask(GamePiece.BOTTOM);
+    t.checkExpect(loose.autoSolve(), true);
+    t.checkExpect(loose.allPowered(), true);
+
+    // probing stays local, so big boards solve in about linear time
+    packed = PackedBoard.random(400, 400, 0, 0, new Random(1));
+    solver = new BoardSolver(packed);
+    t.checkExpect(solver.solve(), true);
+    t.checkExpect(solver.probeSize, 0);
+    packed.masks = solver.solution();
+    packed.updatePower();
+    t.checkExpect(packed.allPowered(), true);
+  }
+
+  // tests for packMasks and unpackMasks
+  void testPackMasks(Tester t) {
+    PackedBoard packed = PackedBoard.random(5, 3, 0, 0, new Random(4));
+    byte[] data = packed.packMasks();
+    t.checkExpect(data.length, 8);
+    PackedBoard copy = new PackedBoard(5, 3);
+    copy.unpackMasks(data, 0);
+    t.checkExpect(copy.masks, packed.masks);
+  }
+
+  // tests for BatchGenerator
+  void testBatchGenerator(Tester t) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    t.checkExpect(new BatchGenerator(10, 19, 6, 5, 3).write(out), 10L);
+
+    ArrayList<PackedBoard> boards = new ArrayList<PackedBoard>();
+    long count = BatchGenerator.read(new ByteArrayInputStream(out.toByteArray()),
+        (seed, packed) -> {
+          LightEmAll expected = new LightEmAll(6, 5);
+          expected.makeRandomBoard(new Random(seed));
+          t.checkExpect(new LightEmAll(packed).board, expected.board);
+          t.checkExpect(seed, 10L + boards.size());
+          boards.add(packed);
+        });
+    t.checkExpect(count, 10L);
+    t.checkExpect(boards.size(), 10);
+  }
+
+  // tests for BoardFile
+  void testBoardFile(Tester t) throws IOException {
+    Path file = Files.createTempFile("board", ".lem");
+    PackedBoard packed = PackedBoard.random(7, 5, 2, 3, new Random(6));
+    byte[] solution = new KruskalGenerator().spanningTree(7, 5, new Random(6));
+    BoardFile.save(file, packed, 6, solution);
+    t.checkExpect(Files.size(file), 64L + 4 + 4 + 18 + 18);
+
+    BoardFile saved = new BoardFile(file);
+    t.checkExpect(saved.width, 7);
+    t.checkExpect(saved.height, 5);
+    t.checkExpect(saved.stationRow, 2);
+    t.checkExpect(saved.stationCol, 3);
+    t.checkExpect(saved.seed, 6L);
+    t.checkExpect(saved.hasSolution(), true);
+    t.checkExpect(saved.mask(4, 6), packed.mask(packed.index(4, 6)));
+    t.checkExpect(saved.solutionMask(1, 0), (int) solution[7]);
+    t.checkExpect(saved.pieceAt(2, 3), packed.pieceAt(2, 3));
+    t.checkExpect(saved.toPackedBoard().masks, packed.masks);
+    t.checkExpect(saved.solution(), solution);
+
+    LightEmAll seeded = new LightEmAll(7, 5, 6);
+    BoardFile.save(file, seeded, 6);
+    saved = new BoardFile(file);
+    t.checkExpect(saved.solution(), seeded.solution);
+    t.checkExpect(saved.toGame().misrotatedCount, seeded.misrotatedCount);
+    t.checkExpect(saved.toGame().seed, 6L);
+    t.checkExpect(new LightEmAll(saved.toPackedBoard()).seed, 0L);
+
+    this.initData();
+    this.game.powerCol = 1;
+    this.game.powerRow = 1;
+    this.game.setSolution(null);
+    BoardFile.save(file, this.game, 0);
+    saved = new BoardFile(file);
+    t.checkExpect(saved.hasSolution(), false);
+    t.checkExpect(saved.solution(), null);
+    t.checkExpect(saved.stationRow, 1);
+    t.checkExpect(saved.toGame().board.get(1).get(0).mask(), this.gp10.mask());
+
+    LightEmAll stations = new LightEmAll(7, 5, 6, new KruskalGenerator(), 3);
+    for (int k = 0; k < 3; k++) {
+      stations.pieceAt(stations.stationIndex(k)).powerStation = false;
+    }
+    stations.stations = new int[] {1, 0, 34};
+    stations.powerRow = 0;
+    stations.powerCol = 1;
+    for (int k = 0; k < 3; k++) {
+      stations.pieceAt(stations.stationIndex(k)).powerStation = true;
+    }
+    BoardFile.save(file, stations, 6);
+    t.checkExpect(Files.size(file), 64L + 4 + 12 + 18 + 18);
+    saved = new BoardFile(file);
+    t.checkExpect(saved.stations, new int[] {1, 0, 34});
+    t.checkExpect(saved.stationCol, 1);
+    t.checkExpect(saved.pieceAt(4, 6).powerStation, true);
+    t.checkExpect(saved.pieceAt(0, 0).powerStation, true);
+    t.checkExpect(saved.pieceAt(2, 3).powerStation, false);
+    LightEmAll loaded = saved.toGame();
+    t.checkExpect(loaded.stations.length, 3);
+    for (int k = 0; k < 3; k++) {
+      t.checkExpect(loaded.stationIndex(k), stations.stationIndex(k));
+    }
+    t.checkExpect(loaded.powerRow, 0);
+    t.checkExpect(loaded.powerCol, 1);
+    t.checkExpect(new PackedBoard(loaded).masks, new PackedBoard(stations).masks);
+    loaded.updatePower();
+    stations.updatePower();
+    t.checkExpect(loaded.poweredCount, stations.poweredCount);
+    t.checkExpect(saved.toPackedBoard().stations, new PackedBoard(stations).stations);
+    Files.delete(file);
+  }
+
   // tests for makeScene
   void testMakeScene(Tester t) {
     this.initData();
@@ -528,6 +1904,59 @@ class Tests {
     t.checkExpect(game.makeScene(), expected);
   }
 
+  // tests for TileImageCache
+  void testTileImageCache(Tester t) {
+    this.initData();
+    TileImageCache tiles = TileImageCache.shared(40, 4, Color.LIGHT_GRAY, Color.YELLOW);
+    t.checkExpect(tiles.get(this.gp4.mask(), 0, false),
+        this.gp4.tileImage(40, 4, Color.LIGHT_GRAY, false));
+    t.checkExpect(tiles.get(this.gp3.mask(), 1, true),
+        this.gp3.tileImage(40, 4, Color.YELLOW, true));
+    t.checkExpect(tiles.get(3, 1, true) == tiles.get(3, 1, true), true);
+    t.checkExpect(TileImageCache.shared(40, 4, Color.LIGHT_GRAY, Color.YELLOW) == tiles, true);
+
+    TileImageCache bigger = TileImageCache.shared(60, 4, Color.LIGHT_GRAY, Color.YELLOW);
+    t.checkExpect(bigger == tiles, false);
+    t.checkExpect(bigger.get(this.gp1.mask(), 0, false),
+        this.gp1.tileImage(60, 4, Color.LIGHT_GRAY, false));
+    t.checkExpect(TileImageCache.shared(60, 4, Color.LIGHT_GRAY, Color.RED) == bigger, false);
+  }
+
+  // tests that makeScene only redraws the tiles that changed
+  void testMakeSceneDirty(Tester t) {
+    this.initData();
+    this.game.updatePower();
+    WorldScene first = this.game.makeScene();
+    t.checkExpect(this.game.scenePlaced, 4);
+    t.checkExpect(this.game.makeScene() == first, true);
+    t.checkExpect(this.game.scenePlaced, 4);
+
+    // rotating the station cuts the top right tile off
+    this.game.onMouseClicked(new Posn(10, 10));
+    t.checkExpect(this.game.dirtyCount, 2);
+    t.checkExpect(this.game.makeScene() == first, true);
+    t.checkExpect(this.game.scenePlaced, 6);
+    t.checkExpect(this.game.dirtyCount, 0);
+
+    // moving the station only changes the two tiles it moves between
+    this.game.onMouseClicked(new Posn(10, 10));
+    this.game.onMouseClicked(new Posn(10, 10));
+    this.game.onMouseClicked(new Posn(10, 10));
+    this.game.makeScene();
+    this.game.onKeyEvent("right");
+    t.checkExpect(this.game.dirtyCount, 2);
+
+    // once the scene holds twice as many tiles as the board it starts over
+    this.game.onKeyEvent("left");
+    this.game.onMouseClicked(new Posn(50, 10));
+    WorldScene fresh = this.game.makeScene();
+    t.checkExpect(fresh == first, false);
+    t.checkExpect(this.game.scenePlaced, 4);
+
+    this.game.makeRandomBoard(new Random(1));
+    t.checkExpect(this.game.makeScene() == fresh, false);
+  }
+
   // tests for onMouseClicked
   void testOnMouseClicked(Tester t) {
     // clicking on a tile
@@ -643,6 +2072,84 @@ class Tests {
     t.checkExpect(gp3.powered, true); 
   }
 
+  // builds a board whose only wire snakes back and forth through every tile,
+  // the deepest possible search for dfsPower
+  LightEmAll snakeBoard(int width, int height) {
+    LightEmAll snake = new LightEmAll(1, 1);
+    snake.width = width;
+    snake.height = height;
+    snake.board = new ArrayList<ArrayList<GamePiece>>();
+    for (int col = 0; col < width; col++) {
+      ArrayList<GamePiece> column = new ArrayList<GamePiece>();
+      for (int row = 0; row < height; row++) {
+        GamePiece gp = new GamePiece(row, col);
+        gp.left = col > 0;
+        gp.right = col < width - 1;
+        gp.top = row > 0 && col == ((row - 1) % 2 == 0 ? width - 1 : 0);
+        gp.bottom = row < height - 1 && col == (row % 2 == 0 ? width - 1 : 0);
+        column.add(gp);
+      }
+      snake.board.add(column);
+    }
+    snake.powerRow = 0;
+    snake.powerCol = 0;
+    snake.poweredCount = 0;
+    snake.setSolution(null);
+    snake.board.get(0).get(0).powerStation = true;
+    return snake;
+  }
+
+  // tests that dfsPower reaches the end of a very long wire
+  void testDfsPowerLongWire(Tester t) {
+    LightEmAll snake = this.snakeBoard(300, 300);
+    snake.updatePower();
+    t.checkExpect(snake.board.get(0).get(299).powered, true);
+    t.checkExpect(snake.board.get(299).get(0).powered, true);
+    t.checkExpect(snake.board.get(150).get(150).powered, true);
+
+    snake.board.get(0).get(150).rotate();
+    snake.updatePower();
+    t.checkExpect(snake.board.get(0).get(149).powered, true);
+    t.checkExpect(snake.board.get(0).get(150).powered, false);
+    t.checkExpect(snake.board.get(0).get(299).powered, false);
+  }
+
+  // tests for rotateAt
+  void testRotateAt(Tester t) {
+    Random rand = new Random(7);
+    for (int seed = 0; seed < 20; seed++) {
+      LightEmAll testGame = new LightEmAll(2 + seed % 7, 3 + seed % 5);
+      testGame.makeRandomBoard(new Random(seed));
+      testGame.updatePower();
+
+      for (int click = 0; click < 200; click++) {
+        testGame.rotateAt(rand.nextInt(testGame.height), rand.nextInt(testGame.width));
+        boolean[] incremental = new boolean[testGame.width * testGame.height];
+        for (int i = 0; i < incremental.length; i++) {
+          incremental[i] = testGame.pieceAt(i).powered;
+        }
+        testGame.updatePower();
+        boolean same = true;
+        for (int i = 0; i < incremental.length; i++) {
+          same = same && incremental[i] == testGame.pieceAt(i).powered;
+        }
+        t.checkExpect(same, true);
+      }
+    }
+
+    // cutting a long wire in the middle unpowers the far half
+    LightEmAll snake = this.snakeBoard(30, 30);
+    snake.updatePower();
+    snake.rotateAt(15, 0);
+    t.checkExpect(snake.board.get(0).get(14).powered, true);
+    t.checkExpect(snake.board.get(0).get(15).powered, false);
+    t.checkExpect(snake.board.get(29).get(29).powered, false);
+    snake.rotateAt(15, 0);
+    snake.rotateAt(15, 0);
+    snake.rotateAt(15, 0);
+    t.checkExpect(snake.board.get(29).get(29).powered, true);
+  }
+
   // tests for checkWin
   void testCheckWin(Tester t) {
     this.initData();
@@ -651,6 +2158,50 @@ class Tests {
     t.checkExpect(this.game.makeScene(),start);
   }
 
+  // tests for allPowered
+  void testAllPowered(Tester t) {
+    this.initData();
+    t.checkExpect(this.game.allPowered(), false);
+
+    Random rand = new Random(3);
+    for (int seed = 0; seed < 30; seed++) {
+      LightEmAll testGame = new LightEmAll(2 + seed % 2, 2 + seed % 3);
+      testGame.makeRandomBoard(new Random(seed));
+      testGame.updatePower();
+
+      for (int click = 0; click < 100; click++) {
+        testGame.rotateAt(rand.nextInt(testGame.height), rand.nextInt(testGame.width));
+        int powered = 0;
+        for (ArrayList<GamePiece> column : testGame.board) {
+          for (GamePiece gp : column) {
+            if (gp.powered) {
+              powered++;
+            }
+          }
+        }
+        t.checkExpect(testGame.poweredCount, powered);
+        t.checkExpect(testGame.allPowered(), powered == testGame.width * testGame.height);
+      }
+    }
+
+    // flags set directly, as fixtures do, don't throw off the count
+    LightEmAll fixture = this.snakeBoard(3, 2);
+    for (int index = 0; index < 6; index++) {
+      fixture.pieceAt(index).powered = true;
+    }
+    fixture.updatePower();
+    t.checkExpect(fixture.poweredCount, 6);
+    t.checkExpect(fixture.allPowered(), true);
+    fixture.rotateAt(0, 1);
+    t.checkExpect(fixture.poweredCount, 1);
+    for (int index = 0; index < 6; index++) {
+      fixture.pieceAt(index).powered = index % 2 == 0;
+    }
+    fixture.updatePower();
+    t.checkExpect(fixture.poweredCount, 1);
+    t.checkExpect(fixture.allPowered(), false);
+  }
+
   // tests for lastScene
   void testLastScene(Tester t) {
     this.initData();
@@ -691,24 +2242,761 @@ class Tests {
     t.checkExpect(this.gp2.powered, true);
   }
 
-  // tests for makeSet
-  void testMakeSet(Tester t) {
-    UnionFind uf = new UnionFind();
-    GamePiece gp1 = new GamePiece(0, 0);
-    GamePiece gp2 = new GamePiece(0, 1);
-    
-    uf.makeSet(gp1);
-    uf.makeSet(gp2);
-    
-    t.checkExpect(uf.parent.get(gp1), gp1);
-    t.checkExpect(uf.parent.get(gp2), gp2);
-    
-    t.checkExpect(uf.find(gp1), gp1);
-    t.checkExpect(uf.find(gp2), gp2);
-    
-    uf.union(gp1, gp2);
-    GamePiece root1 = uf.find(gp1);
-    GamePiece root2 = uf.find(gp2);
-    t.checkExpect(root1, root2); 
+  // tests for mask and setMask
+  void testMask(Tester t) {
+    this.initData();
+    t.checkExpect(this.gp1.mask(), GamePiece.RIGHT | GamePiece.BOTTOM);
+    t.checkExpect(this.gp4.mask(), GamePiece.TOP | GamePiece.RIGHT | GamePiece.LEFT);
+    GamePiece piece = new GamePiece(1, 2);
+    piece.setMask(GamePiece.TOP);
+    t.checkExpect(piece.top, true);
+    t.checkExpect(piece.right, false);
+    t.checkExpect(piece.bottom, false);
+    t.checkExpect(piece.left, false);
+    t.checkExpect(GamePiece.rotateMask(GamePiece.LEFT), GamePiece.TOP);
+    t.checkExpect(GamePiece.rotateMask(GamePiece.TOP | GamePiece.RIGHT),
+        GamePiece.RIGHT | GamePiece.BOTTOM);
+  }
+
+  // tests for PackedBoard
+  void testPackedBoard(Tester t) {
+    this.initData();
+    PackedBoard packed = new PackedBoard(this.game);
+    t.checkExpect(packed.mask(packed.index(0, 0)), GamePiece.RIGHT);
+    t.checkExpect(packed.mask(packed.index(0, 1)), GamePiece.TOP | GamePiece.LEFT);
+    t.checkExpect(packed.isStation(0), true);
+    t.checkExpect(packed.isStation(1), false);
+    t.checkExpect(packed.isPowered(3), true);
+    t.checkExpect(packed.pieceAt(1, 1), this.gp11);
+
+    Random rand = new Random(11);
+    for (int seed = 0; seed < 10; seed++) {
+      LightEmAll testGame = new LightEmAll(3 + seed, 4);
+      testGame.makeRandomBoard(new Random(seed));
+      packed = new PackedBoard(testGame);
+      for (int click = 0; click < 50; click++) {
+        int row = rand.nextInt(testGame.height);
+        int col = rand.nextInt(testGame.width);
+        testGame.rotateAt(row, col);
+        packed.rotate(packed.index(row, col));
+      }
+      packed.updatePower();
+      t.checkExpect(packed.poweredCount, testGame.poweredCount);
+      t.checkExpect(new LightEmAll(packed).board, testGame.board);
+    }
+  }
+
+  // tests for UnionFind
+  void testUnionFind(Tester t) {
+    UnionFind uf = new UnionFind(4);
+
+    t.checkExpect(uf.parent[0], 0);
+    t.checkExpect(uf.parent[1], 1);
+
+    t.checkExpect(uf.find(0), 0);
+    t.checkExpect(uf.find(1), 1);
+
+    t.checkExpect(uf.union(0, 1), true);
+    t.checkExpect(uf.find(0), uf.find(1));
+    t.checkExpect(uf.union(1, 0), false);
+    t.checkExpect(uf.find(2) == uf.find(0), false);
+
+    uf.union(2, 3);
+    uf.union(3, 1);
+    t.checkExpect(uf.find(2), uf.find(0));
+    t.checkExpect(uf.union(0, 3), false);
+
+    UnionFind chain = new UnionFind(100000);
+    for (int i = 1; i < 100000; i++) {
+      chain.union(i - 1, i);
+    }
+    t.checkExpect(chain.find(0), chain.find(99999));
+  }
+
+  // tests for EventMetrics
+  void testEventMetrics(Tester t) {
+    LightEmAll testGame = this.snakeBoard(3, 3);
+    EventMetrics.reset();
+    testGame.onMouseClicked(new Posn(60, 60));
+    testGame.onTick();
+    t.checkExpect(EventMetrics.count(EventMetrics.CLICK), 0L);
+    t.checkExpect(EventMetrics.frames, 0L);
+
+    EventMetrics.enable(0.1, 0);
+    testGame.onMouseClicked(new Posn(60, 60));
+    testGame.makeScene();
+    testGame.onTick();
+    t.checkExpect(EventMetrics.count(EventMetrics.CLICK), 1L);
+    t.checkExpect(EventMetrics.count(EventMetrics.ROTATE), 1L);
+    t.checkExpect(EventMetrics.count(EventMetrics.CHECK_WIN), 1L);
+    t.checkExpect(EventMetrics.count(EventMetrics.MAKE_SCENE), 1L);
+    t.checkExpect(EventMetrics.frames, 1L);
+    t.checkExpect(EventMetrics.overruns, 0L);
+
+    EventMetrics.add(EventMetrics.KEY, 200_000_000L);
+    testGame.onTick();
+    t.checkExpect(EventMetrics.frames, 2L);
+    t.checkExpect(EventMetrics.overruns, 1L);
+    t.checkExpect(EventMetrics.maxima[EventMetrics.KEY], 200_000_000L);
+    t.checkExpect(EventMetrics.percentile(EventMetrics.KEY, 0.99), 200_000_000L);
+    EventMetrics.disable();
+
+    t.checkExpect(EventMetrics.bucket(0), 0);
+    t.checkExpect(EventMetrics.bucket(1), 1);
+    t.checkExpect(EventMetrics.bucket(1000), 10);
+    t.checkExpect(EventMetrics.bucket(1024), 11);
+    t.checkExpect(EventMetrics.json().contains("\"overruns\":1"), true);
+    t.checkExpect(EventMetrics.text().contains("frames 2, overruns 1"), true);
+    EventMetrics.reset();
+  }
+
+  // tests for InputRecorder and InputReplay
+  void testInputReplay(Tester t) throws IOException {
+    LightEmAll testGame = new LightEmAll(6, 5, 11);
+    t.checkExpect(testGame.board, new LightEmAll(6, 5, 11).board);
+    t.checkExpect(testGame.seed, 11L);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputRecorder recorder = new InputRecorder(testGame, out, 4);
+    Random rand = new Random(3);
+    String[] keys = new String[] {"up", "down", "left", "right", "backspace"};
+    for (int i = 0; i < 50; i++) {
+      if (i % 5 == 4) {
+        testGame.onKeyEvent(keys[rand.nextInt(keys.length)]);
+      }
+      else {
+        testGame.onMouseClicked(new Posn(rand.nextInt(240), rand.nextInt(200)));
+      }
+    }
+    recorder.close();
+    t.checkExpect(testGame.recorder, null);
+
+    InputReplay replay = new InputReplay(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(replay.width, 6);
+    t.checkExpect(replay.height, 5);
+    t.checkExpect(replay.seed, 11L);
+    t.checkExpect(replay.size, 50);
+    t.checkExpect(replay.hasHash, true);
+    LightEmAll replayed = replay.play(new long[50], 0);
+    t.checkExpect(replay.matches(replayed), true);
+    t.checkExpect(replayed.board, testGame.board);
+    t.checkExpect(replayed.powerRow * 6 + replayed.powerCol,
+        testGame.powerRow * 6 + testGame.powerCol);
+
+    replayed.rotateAt(0, 0);
+    t.checkExpect(replay.matches(replayed), false);
+
+    // a fresh game, whose power hasn't been worked out yet, replays as is
+    LightEmAll fresh = new LightEmAll(6, 5, 11);
+    out = new ByteArrayOutputStream();
+    recorder = new InputRecorder(fresh, out, 4);
+    fresh.onKeyEvent("n");
+    fresh.onMouseClicked(new Posn(1000, 1000));
+    recorder.close();
+    replay = new InputReplay(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(replay.powerValid, false);
+    replayed = replay.play(null, 0);
+    t.checkExpect(replayed.poweredCount, fresh.poweredCount);
+    t.checkExpect(replayed.board, fresh.board);
+    t.checkExpect(replay.matches(replayed), true);
+
+    long click = (long) InputRecorder.CLICK << 56 | 40000L << 28 | 123L;
+    t.checkExpect(InputRecorder.clickX(click), 40000);
+    t.checkExpect(InputRecorder.clickY(click), 123);
+    recorder.key("right");
+    t.checkExpect(InputRecorder.keyName(recorder.events[0]), "right");
+    t.checkExpect(InputRecorder.kind(recorder.events[0]), InputRecorder.KEY);
+    recorder.size = 0;
+    recorder.key("backspace");
+    t.checkExpect(InputRecorder.keyName(recorder.events[0]), "backspa");
+    t.checkExpect(InputReplay.percentile(new long[] {1, 2, 3, 4}, 0.5), 2L);
+    t.checkExpect(InputReplay.percentile(new long[] {1, 2, 3, 4}, 1.0), 4L);
+
+    // recording a game part way through, on another generator, with several
+    // stations and the camera zoomed in and scrolled
+    LightEmAll played = new LightEmAll(30, 20, 6, new PrimGenerator(), 3);
+    played.enableViewport(200, 120);
+    for (int i = 0; i < 40; i++) {
+      played.rotateAt(rand.nextInt(20), rand.nextInt(30));
+    }
+    played.onKeyEvent("+");
+    played.onKeyEvent("d");
+    played.onKeyEvent("s");
+    played.onKeyEvent("2");
+    played.setLighting(true);
+    out = new ByteArrayOutputStream();
+    recorder = new InputRecorder(played, out, 16);
+    String[] moves = new String[] {"up", "down", "left", "right", "n", "w", "a", "-", "i"};
+    for (int i = 0; i < 200; i++) {
+      if (i % 3 == 0) {
+        played.onKeyEvent(moves[rand.nextInt(moves.length)]);
+      }
+      else {
+        played.onMouseClicked(new Posn(rand.nextInt(200), rand.nextInt(120)));
+      }
+    }
+    recorder.close();
+    replay = new InputReplay(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(replay.generator instanceof PrimGenerator, true);
+    t.checkExpect(replay.stations.length, 3);
+    replayed = replay.play(null, 0);
+    t.checkExpect(replay.matches(replayed), true);
+    t.checkExpect(replayed.board, played.board);
+    t.checkExpect(replayed.stations, played.stations);
+    t.checkExpect(replayed.selected, played.selected);
+    t.checkExpect(replayed.viewRow * 1000 + replayed.viewCol,
+        played.viewRow * 1000 + played.viewCol);
+    t.checkExpect(replayed.tileSize, played.tileSize);
+    t.checkExpect(replayed.litCount, played.litCount);
+    t.checkExpect(replayed.seed, 6L);
+
+    new MoveJournal(played, 0);
+    played.onMouseClicked(new Posn(0, 0));
+    t.checkException(new IllegalArgumentException("the game has moves that could be undone"),
+        this, "recordGame", played);
+  }
+
+  // starts recording the given game, for testing
+  InputRecorder recordGame(LightEmAll game) throws IOException {
+    return new InputRecorder(game, new ByteArrayOutputStream(), 4);
+  }
+
+  // tests for SessionHost
+  void testSessionHost(Tester t) throws InterruptedException {
+    int[] replies = new int[3];
+    SessionHost host = new SessionHost(2, (session, command, reply) -> {
+      synchronized (replies) {
+        replies[0]++;
+        replies[1] = reply;
+      }
+    });
+    LightEmAll testGame = new LightEmAll(5, 4, 9);
+    GameSession session = host.open(5, 4, 9);
+    t.checkExpect(host.open(5, 4, 9).board.masks == session.board.masks, false);
+    t.checkExpect(host.template(5, 4, 9) == host.template(5, 4, 9), true);
+
+    testGame.updatePower();
+    t.checkExpect(session.board.poweredCount, testGame.poweredCount);
+    Random rand = new Random(4);
+    for (int i = 0; i < 300; i++) {
+      int row = rand.nextInt(4);
+      int col = rand.nextInt(5);
+      testGame.rotateAt(row, col);
+      t.checkExpect(host.send(session, SessionHost.ROTATE | (row * 5 + col)), true);
+    }
+    host.send(session, SessionHost.MOVE | GamePiece.LEFT);
+    host.send(session, SessionHost.STATUS);
+    host.close();
+
+    t.checkExpect(replies[0], 302);
+    t.checkExpect(host.processed.sum(), 302L);
+    t.checkExpect(replies[1] & ~SessionHost.WON, testGame.poweredCount);
+    t.checkExpect(new LightEmAll(session.board).board,
+        new LightEmAll(new PackedBoard(testGame)).board);
+    t.checkExpect(session.station, 0);
+
+    LightEmAll snake = this.snakeBoard(3, 2);
+    snake.updatePower();
+    GameSession solved = new GameSession(new PackedBoard(snake));
+    t.checkExpect(solved.run(SessionHost.STATUS, new int[6], new int[6], host),
+        6 | SessionHost.WON);
+    t.checkExpect(solved.run(SessionHost.MOVE | GamePiece.RIGHT, new int[6], new int[6], host),
+        6 | SessionHost.WON);
+    t.checkExpect(solved.station, 1);
+    t.checkExpect(solved.run(SessionHost.ROTATE | 1, new int[6], new int[6], host), 1);
+    t.checkExpect(solved.board.stack, null);
+
+    // the power a session keeps up to date is what a full search finds
+    GameSession incremental = new GameSession(PackedBoard.random(9, 7, 3, 4, new Random(2)));
+    PackedBoard full = GameSession.copy(incremental.board);
+    full.parents = null;
+    int[] stack = new int[63];
+    int[] cut = new int[63];
+    boolean same = true;
+    for (int i = 0; i < 2000; i++) {
+      int command = rand.nextInt(5) == 0 ? SessionHost.MOVE | 1 << rand.nextInt(4)
+          : SessionHost.ROTATE | rand.nextInt(63);
+      incremental.run(command, stack, cut, host);
+      full.masks = incremental.board.masks.clone();
+      full.stations = incremental.board.stations.clone();
+      full.updatePower();
+      same = same && Arrays.equals(full.powered, incremental.board.powered)
+          && full.poweredCount == incremental.board.poweredCount;
+    }
+    t.checkExpect(same, true);
+
+    SessionHost bounded = new SessionHost(1, null);
+    PackedBoard first = bounded.template(3, 3, 0);
+    for (int seed = 1; seed <= SessionHost.TEMPLATE_LIMIT; seed++) {
+      bounded.template(3, 3, seed);
+    }
+    t.checkExpect(bounded.templates.size(), SessionHost.TEMPLATE_LIMIT);
+    t.checkExpect(bounded.template(3, 3, 0) == first, false);
+    t.checkExpect(bounded.template(3, 3, 0).masks, first.masks);
+    t.checkExpect(new TemplateKey(3, 3, 0), new TemplateKey(3, 3, 0));
+    t.checkExpect(new TemplateKey(3, 3, 0).equals(new TemplateKey(3, 4, 0)), false);
+    t.checkExpect(new TemplateKey(3, 3, 0).hashCode(), new TemplateKey(3, 3, 0).hashCode());
+
+    // boards generate outside the lock, and a thread asking for a board
+    // being generated gets the same one
+    PackedBoard[] concurrent = new PackedBoard[4];
+    Thread[] threads = new Thread[concurrent.length];
+    synchronized (bounded) {
+      for (int i = 0; i < threads.length; i++) {
+        int slot = i;
+        threads[i] = new Thread(() -> concurrent[slot] = bounded.template(300, 200, 5));
+        threads[i].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    }
+    boolean shared = true;
+    for (PackedBoard board : concurrent) {
+      shared &= board == concurrent[0];
+    }
+    t.checkExpect(shared, true);
+    t.checkExpect(concurrent[0] == bounded.template(300, 200, 5), true);
+    t.checkException(new NegativeArraySizeException("-1"), bounded, "template", -1, 1, 0L);
+    t.checkExpect(bounded.templates.containsKey(new TemplateKey(-1, 1, 0)), false);
+    bounded.close();
+  }
+
+  // tests for the viewport camera
+  void testViewport(Tester t) {
+    LightEmAll testGame = new LightEmAll(100, 50, 5);
+    testGame.enableViewport(400, 200);
+    t.checkExpect(testGame.lastCol(), 10);
+    t.checkExpect(testGame.lastRow(), 5);
+    testGame.makeScene();
+    t.checkExpect(testGame.sceneWidth(), 400);
+    t.checkExpect(testGame.sceneHeight(), 200);
+    t.checkExpect(testGame.scenePlaced, 50);
+
+    testGame.onKeyEvent("d");
+    testGame.onKeyEvent("s");
+    t.checkExpect(testGame.viewCol, 2);
+    t.checkExpect(testGame.viewRow, 1);
+    t.checkExpect(testGame.scene, null);
+    testGame.makeScene();
+    t.checkExpect(testGame.scenePlaced, 50);
+
+    int before = testGame.pieceAt(3 * 100 + 5).mask();
+    testGame.onMouseClicked(new Posn(3 * 40 + 5, 2 * 40 + 5));
+    t.checkExpect(testGame.pieceAt(3 * 100 + 5).mask(), GamePiece.rotateMask(before));
+    testGame.makeScene();
+    t.checkExpect(testGame.scenePlaced, 51);
+    testGame.rotateAt(40, 90);
+    testGame.makeScene();
+    t.checkExpect(testGame.scenePlaced, 51);
+
+    testGame.onKeyEvent("-");
+    t.checkExpect(testGame.tileSize, 28);
+    for (int i = 0; i < 10; i++) {
+      testGame.onKeyEvent("-");
+    }
+    t.checkExpect(testGame.tileSize, 1);
+    t.checkExpect(testGame.viewCol, 0);
+    t.checkExpect(testGame.viewRow, 0);
+    testGame.makeScene();
+    t.checkExpect(testGame.sceneTiles, null);
+    t.checkExpect(testGame.scenePlaced, 5000);
+    testGame.onKeyEvent("+");
+    t.checkExpect(testGame.tileSize, 2);
+
+    for (int i = 0; i < 20; i++) {
+      testGame.onKeyEvent("=");
+    }
+    t.checkExpect(testGame.tileSize, 80);
+    for (int i = 0; i < 100; i++) {
+      testGame.onKeyEvent("d");
+      testGame.onKeyEvent("s");
+    }
+    t.checkExpect(testGame.viewCol, 95);
+    t.checkExpect(testGame.viewRow, 48);
+    t.checkExpect(testGame.lastCol(), 100);
+    t.checkExpect(testGame.lastRow(), 50);
+
+    LightEmAll whole = new LightEmAll(3, 3, 5);
+    whole.onKeyEvent("+");
+    t.checkExpect(whole.tileSize, 40);
+    t.checkExpect(whole.sceneWidth(), 120);
+  }
+
+  // tests for BoardPool
+  void testBoardPool(Tester t) throws InterruptedException {
+    BoardPool pool = new BoardPool(1 << 20, 2, 7);
+    t.checkExpect(pool.generate(), false);
+    pool.prepare(12, 10);
+    t.checkExpect(pool.generate(), true);
+    t.checkExpect(pool.ready(12, 10), 1);
+    t.checkExpect(pool.generate(), true);
+    t.checkExpect(pool.generate(), false);
+    t.checkExpect(pool.ready(12, 10), 2);
+    LightEmAll taken = pool.take(12, 10);
+    t.checkExpect(taken.width, 12);
+    t.checkExpect(taken.height, 10);
+    t.checkExpect(taken.board, new LightEmAll(12, 10, taken.seed).board);
+    LightEmAll fresh = pool.take(3, 4);
+    t.checkExpect(fresh.board, new LightEmAll(3, 4, fresh.seed).board);
+    pool.start();
+    pool.close();
+    t.checkExpect(pool.worker.isAlive(), false);
+
+    long bytes = 10 * 10 * BoardPool.BYTES_PER_TILE;
+    BoardPool small = new BoardPool(3 * bytes, 4, 1);
+    PoolSize often = small.size(10, 10);
+    PoolSize rarely = small.size(5, 20);
+    often.uses = 5;
+    rarely.uses = 1;
+    t.checkExpect(small.offer(rarely, new LightEmAll(5, 20, 1)), true);
+    t.checkExpect(small.offer(rarely, new LightEmAll(5, 20, 2)), true);
+    t.checkExpect(small.offer(often, new LightEmAll(10, 10, 3)), true);
+    t.checkExpect(small.bytes, 3 * bytes);
+    t.checkExpect(small.neediest(), often);
+    t.checkExpect(small.room(rarely), 0L);
+    t.checkExpect(small.offer(often, new LightEmAll(10, 10, 4)), true);
+    t.checkExpect(small.ready(5, 20), 0);
+    t.checkExpect(small.ready(10, 10), 2);
+    t.checkExpect(small.bytes, 2 * bytes);
+    t.checkExpect(small.neediest(), often);
+    t.checkExpect(small.offer(rarely, new LightEmAll(5, 20, 5)), true);
+    t.checkExpect(small.offer(rarely, new LightEmAll(5, 20, 6)), false);
+    t.checkExpect(small.neediest(), often);
+    small.offer(often, new LightEmAll(10, 10, 7));
+    t.checkExpect(small.neediest(), null);
+    t.checkExpect(small.take(10, 10).seed, 3L);
+    t.checkExpect(small.bytes, 2 * bytes);
+  }
+
+  // tests for lighting mode
+  void testLighting(Tester t) {
+    t.checkExpect(PackedBoard.diameter(new byte[] {2, 10, 10, 8}, 4, 1), 3);
+    t.checkExpect(PackedBoard.diameter(new byte[] {2, 14, 8, 0, 1, 0}, 3, 2), 2);
+    LightEmAll snake = this.snakeBoard(4, 3);
+    snake.radius = 5;
+    snake.updatePower();
+    snake.setLighting(true);
+    t.checkExpect(snake.dist, new int[] {0, 1, 2, 3, 7, 6, 5, 4, 8, 9, 10, 11});
+    t.checkExpect(snake.litCount, 6);
+    t.checkExpect(snake.shade(0), 1);
+    t.checkExpect(snake.shade(6), 6);
+    t.checkExpect(snake.shade(5), 0);
+    snake.checkWin();
+    t.checkExpect(snake.ended, false);
+    snake.radius = 11;
+    snake.setLighting(true);
+    snake.checkWin();
+    t.checkExpect(snake.ended, true);
+
+    LightEmAll testGame = new LightEmAll(9, 7, 3);
+    t.checkExpect(testGame.radius, 0);
+    testGame.setLighting(true);
+    t.checkExpect(testGame.radius,
+        PackedBoard.diameter(PackedBoard.random(9, 7, 0, 0, new Random(3)).solution, 9, 7) / 2
+            + 1);
+    testGame.updatePower();
+    Random rand = new Random(8);
+    boolean same = true;
+    for (int i = 0; i < 2000; i++) {
+      testGame.rotateAt(rand.nextInt(7), rand.nextInt(9));
+      int[] dist = testGame.dist.clone();
+      int lit = testGame.litCount;
+      testGame.computeDistances();
+      same &= Arrays.equals(dist, testGame.dist) && lit == testGame.litCount;
+      for (int index = 0; index < 63; index++) {
+        same &= testGame.pieceAt(index).powered == (dist[index] != LightEmAll.FAR);
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(testGame.lightHeapSize, 0);
+  }
+
+  // tests for the hint engine
+  void testHints(Tester t) {
+    t.checkExpect(GamePiece.turns(GamePiece.TOP, GamePiece.RIGHT), 1);
+    t.checkExpect(GamePiece.turns(GamePiece.TOP, GamePiece.LEFT), 3);
+    t.checkExpect(GamePiece.turns(5, 10), 1);
+    t.checkExpect(GamePiece.turns(5, 5), 0);
+    t.checkExpect(GamePiece.turns(15, 15), 0);
+    t.checkExpect(GamePiece.turns(1, 3), -1);
+
+    LightEmAll testGame = new LightEmAll(8, 6, 12);
+    t.checkExpect(testGame.solution, PackedBoard.random(8, 6, 0, 0, new Random(12)).solution);
+    int wrong = 0;
+    for (int index = 0; index < 48; index++) {
+      if (testGame.pieceAt(index).mask() != testGame.solution[index]) {
+        wrong++;
+      }
+    }
+    t.checkExpect(testGame.misrotatedCount, wrong);
+
+    Random rand = new Random(2);
+    boolean consistent = true;
+    for (int i = 0; i < 500; i++) {
+      testGame.rotateAt(rand.nextInt(6), rand.nextInt(8));
+      int count = 0;
+      for (int index = 0; index < 48; index++) {
+        boolean misrotated = testGame.pieceAt(index).mask() != testGame.solution[index];
+        count += misrotated ? 1 : 0;
+        consistent &= misrotated == (testGame.misrotatedAt[index] >= 0);
+        consistent &= !misrotated
+            || testGame.misrotated[testGame.misrotatedAt[index]] == index;
+      }
+      consistent &= count == testGame.misrotatedCount;
+    }
+    t.checkExpect(consistent, true);
+
+    while (testGame.hint() >= 0) {
+      int index = testGame.hint();
+      int turns = testGame.turnsNeeded(index / 8, index % 8);
+      for (int i = 0; i < turns; i++) {
+        testGame.rotateAt(index / 8, index % 8);
+      }
+    }
+    t.checkExpect(testGame.misrotatedCount, 0);
+    t.checkExpect(testGame.allPowered(), true);
+    t.checkExpect(testGame.turnsNeeded(3, 3), 0);
+
+    testGame.setSolution(null);
+    t.checkExpect(testGame.hint(), -1);
+    t.checkExpect(testGame.turnsNeeded(3, 3), -1);
+  }
+
+  // tests for MoveJournal
+  void testMoveJournal(Tester t) {
+    LightEmAll testGame = new LightEmAll(7, 6, 4);
+    testGame.updatePower();
+    MoveJournal journal = new MoveJournal(testGame, Integer.MAX_VALUE);
+    t.checkExpect(testGame.journal, journal);
+    t.checkExpect(journal.undo(), false);
+
+    int moves = 3 * MoveJournal.CHECKPOINT_EVERY + 100;
+    long[] hashes = new long[moves + 1];
+    hashes[0] = testGame.stateHash();
+    String[] keys = new String[] {"up", "down", "left", "right"};
+    Random rand = new Random(5);
+    while (journal.position < moves) {
+      if (rand.nextInt(4) == 0) {
+        testGame.onKeyEvent(keys[rand.nextInt(4)]);
+      }
+      else {
+        testGame.rotateAt(rand.nextInt(6), rand.nextInt(7));
+      }
+      hashes[journal.position] = testGame.stateHash();
+    }
+    t.checkExpect(journal.checkpoints.size(), 4);
+    t.checkExpect(MoveJournal.station(GamePiece.LEFT), 4);
+
+    boolean same = true;
+    for (int i = 0; i < 40; i++) {
+      int move = rand.nextInt(moves + 1);
+      journal.jumpTo(move);
+      same &= journal.position == move && testGame.stateHash() == hashes[move];
+      int powered = testGame.poweredCount;
+      testGame.updatePower();
+      same &= powered == testGame.poweredCount && testGame.stateHash() == hashes[move];
+    }
+    t.checkExpect(same, true);
+
+    journal.jumpTo(moves);
+    t.checkExpect(journal.undo(), true);
+    t.checkExpect(testGame.stateHash(), hashes[moves - 1]);
+    t.checkExpect(journal.redo(), true);
+    t.checkExpect(journal.redo(), false);
+    testGame.onKeyEvent("u");
+    testGame.onKeyEvent("u");
+    t.checkExpect(testGame.stateHash(), hashes[moves - 2]);
+    testGame.onKeyEvent("r");
+    t.checkExpect(testGame.stateHash(), hashes[moves - 1]);
+
+    journal.jumpTo(5000);
+    testGame.rotateAt(0, 0);
+    t.checkExpect(journal.end, 5001);
+    t.checkExpect(journal.checkpoints.size(), 2);
+    t.checkExpect(journal.redo(), false);
+    journal.jumpTo(0);
+    t.checkExpect(testGame.stateHash(), hashes[0]);
+
+    LightEmAll bounded = new LightEmAll(3, 3, 1);
+    MoveJournal limited = new MoveJournal(bounded, 1);
+    for (int i = 0; i < 5 * MoveJournal.CHECKPOINT_EVERY; i++) {
+      bounded.rotateAt(i % 3, i / 3 % 3);
+    }
+    t.checkExpect(limited.first, 3 * MoveJournal.CHECKPOINT_EVERY);
+    t.checkExpect(limited.checkpoints.size(), 3);
+    limited.jumpTo(limited.first);
+    t.checkExpect(limited.position, 3 * MoveJournal.CHECKPOINT_EVERY);
+  }
+
+  // whether the given game's powered tiles are the ones a fresh flood from
+  // all its stations powers, and each gets its power along wires from the
+  // station it's marked as fed by
+  boolean feedsCorrectly(LightEmAll game) {
+    PackedBoard packed = new PackedBoard(game);
+    packed.updatePower();
+    int tiles = game.width * game.height;
+    boolean ok = true;
+    for (int index = 0; index < tiles; index++) {
+      ok &= game.pieceAt(index).powered == packed.isPowered(index);
+      if (game.pieceAt(index).powered) {
+        int root = index;
+        for (int steps = 0; game.powerParent[root] != 0 && steps < tiles; steps++) {
+          ok &= (game.linksAt(root) & game.powerParent[root]) != 0;
+          root = game.neighborIndex(root, game.powerParent[root]);
+        }
+        ok &= root == game.stationIndex(game.feeder[index]);
+      }
+    }
+    return ok;
+  }
+
+  // tests for several power stations
+  void testStations(Tester t) {
+    LightEmAll testGame = new LightEmAll(15, 12, 3, new KruskalGenerator(), 4);
+    t.checkExpect(testGame.stations.length, 4);
+    int onBoard = 0;
+    for (int index = 0; index < 15 * 12; index++) {
+      onBoard += testGame.pieceAt(index).powerStation ? 1 : 0;
+    }
+    t.checkExpect(onBoard, 4);
+    t.checkExpect(testGame.stationAt(testGame.stations[2]), 2);
+    t.checkExpect(testGame.stationAt(testGame.stationIndex(0)), 0);
+
+    testGame.updatePower();
+    t.checkExpect(this.feedsCorrectly(testGame), true);
+    int[] queue = new int[15 * 12];
+    int[][] dist = new int[4][15 * 12];
+    byte[] masks = new PackedBoard(testGame).masks;
+    for (int k = 0; k < 4; k++) {
+      PackedBoard.farthest(masks, 15, 12, testGame.stationIndex(k), queue, dist[k]);
+    }
+    boolean nearest = true;
+    for (int index = 0; index < 15 * 12; index++) {
+      for (int k = 0; k < 4; k++) {
+        nearest &= dist[k][index] < 0
+            || dist[testGame.feeder[index]][index] <= dist[k][index];
+      }
+    }
+    t.checkExpect(nearest, true);
+
+    testGame.onKeyEvent("3");
+    t.checkExpect(testGame.selected, 2);
+    testGame.onKeyEvent("n");
+    t.checkExpect(testGame.selected, 3);
+    testGame.onKeyEvent("n");
+    t.checkExpect(testGame.selected, 0);
+    testGame.onKeyEvent("9");
+    t.checkExpect(testGame.selected, 0);
+
+    MoveJournal journal = new MoveJournal(testGame, Integer.MAX_VALUE);
+    int moves = MoveJournal.CHECKPOINT_EVERY + 500;
+    long[] hashes = new long[moves + 1];
+    hashes[0] = testGame.stateHash();
+    String[] keys = new String[] {"up", "right", "down", "left", "n", "1", "2", "3", "4"};
+    Random rand = new Random(8);
+    boolean correct = true;
+    boolean blocked = true;
+    while (journal.position < moves) {
+      if (rand.nextInt(3) == 0) {
+        int key = rand.nextInt(keys.length);
+        int from = testGame.stationIndex(testGame.selected);
+        boolean onStation = key < 4 && (testGame.linksAt(from) & (1 << key)) != 0
+            && testGame.stationAt(testGame.neighborIndex(from, 1 << key)) >= 0;
+        int before = journal.position;
+        testGame.onKeyEvent(keys[key]);
+        blocked &= !onStation || journal.position == before;
+      }
+      else {
+        testGame.rotateAt(rand.nextInt(12), rand.nextInt(15));
+      }
+      correct &= this.feedsCorrectly(testGame);
+      hashes[journal.position] = testGame.stateHash();
+    }
+    t.checkExpect(correct, true);
+    t.checkExpect(blocked, true);
+
+    boolean same = true;
+    for (int i = 0; i < 20; i++) {
+      int move = rand.nextInt(moves + 1);
+      journal.jumpTo(move);
+      same &= testGame.stateHash() == hashes[move] && this.feedsCorrectly(testGame);
+    }
+    t.checkExpect(same, true);
+
+    LightEmAll unpacked = new LightEmAll(new PackedBoard(testGame));
+    int[] expected = testGame.stations.clone();
+    expected[0] = testGame.stationIndex(0);
+    int[] actual = new int[4];
+    for (int k = 0; k < 4; k++) {
+      actual[k] = unpacked.stationIndex(k);
+    }
+    Arrays.sort(expected);
+    t.checkExpect(actual, expected);
+
+    t.checkExpect(testGame.autoSolve(), true);
+    t.checkExpect(testGame.allPowered(), true);
+    t.checkExpect(this.feedsCorrectly(testGame), true);
+
+    long solved = testGame.stateHash();
+    t.checkExpect(journal.position, 0);
+    t.checkExpect(journal.end, 0);
+    t.checkExpect(journal.checkpoints.size(), 1);
+    t.checkExpect(journal.undo(), false);
+    t.checkExpect(testGame.stateHash(), solved);
+    testGame.onMouseClicked(new Posn(20, 20));
+    t.checkExpect(journal.position, 1);
+    t.checkExpect(journal.undo(), true);
+    t.checkExpect(testGame.stateHash(), solved);
+    t.checkExpect(testGame.allPowered(), true);
+    t.checkExpect(journal.undo(), false);
+    t.checkExpect(journal.redo(), true);
+    journal.jumpTo(0);
+    t.checkExpect(testGame.stateHash(), solved);
+  }
+
+  // tests for BoardRasterizer
+  void testBoardRasterizer(Tester t) throws IOException {
+    PackedBoard pair = new PackedBoard(2, 1);
+    pair.masks[0] = (byte) GamePiece.RIGHT;
+    pair.masks[1] = (byte) GamePiece.LEFT;
+    pair.setPowered(0, true);
+    pair.setStation(1, true);
+    ForkJoinPool one = new ForkJoinPool(1);
+    ForkJoinPool three = new ForkJoinPool(3);
+    BufferedImage image = new BoardRasterizer(20, one).render(pair);
+    t.checkExpect(image.getWidth(), 40);
+    t.checkExpect(image.getHeight(), 20);
+    t.checkExpect(image.getRGB(0, 0), Color.BLACK.getRGB());
+    t.checkExpect(image.getRGB(5, 5), Color.DARK_GRAY.getRGB());
+    t.checkExpect(image.getRGB(19, 10), Color.YELLOW.getRGB());
+    t.checkExpect(image.getRGB(10, 3), Color.DARK_GRAY.getRGB());
+    t.checkExpect(image.getRGB(22, 10), Color.LIGHT_GRAY.getRGB());
+    t.checkExpect(image.getRGB(30, 10), BoardRasterizer.STATION_FILL);
+    t.checkExpect(image.getRGB(27, 10), BoardRasterizer.STATION_OUTLINE);
+
+    BufferedImage cells = new BoardRasterizer(1, one).render(pair);
+    t.checkExpect(cells.getRGB(0, 0), Color.YELLOW.getRGB());
+    t.checkExpect(cells.getRGB(1, 0), BoardRasterizer.STATION_FILL);
+
+    LightEmAll testGame = new LightEmAll(23, 41, 5);
+    testGame.updatePower();
+    int[] alone = new BoardRasterizer(8, one).render(testGame)
+        .getRGB(0, 0, 23 * 8, 41 * 8, null, 0, 23 * 8);
+    BufferedImage striped = new BoardRasterizer(8, three).render(testGame);
+    t.checkExpect(striped.getRGB(0, 0, 23 * 8, 41 * 8, null, 0, 23 * 8), alone);
+    t.checkExpect(striped.getRGB(testGame.powerCol * 8 + 3, testGame.powerRow * 8 + 3),
+        BoardRasterizer.STATION_FILL);
+
+    Path file = Files.createTempFile("board", ".png");
+    BoardRasterizer.writePng(striped, file);
+    BufferedImage read = ImageIO.read(file.toFile());
+    t.checkExpect(read.getRGB(0, 0, 23 * 8, 41 * 8, null, 0, 23 * 8), alone);
+    Files.delete(file);
+
+    t.checkException(new IllegalArgumentException("the image isn't the size of the board"),
+        new BoardRasterizer(8, one), "paint", pair, image);
+    one.shutdown();
+    three.shutdown();
   }
 }
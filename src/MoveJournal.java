@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+
+// keeps every move made in a game, one int each, so moves can be undone,
+// redone, or the game jumped to how it was after any number of moves
+//
+// a move is the index of its tile shifted left three bits, plus ROTATE for
+// a click on that tile, or, for the power station on that tile moving off
+// it, one more than the position of the direction's bit. Moves are numbered from 0
+// and kept in a ring that doubles in size as needed up to a limit; past it,
+// the oldest moves are dropped, CHECKPOINT_EVERY at a time. Undo and redo
+// turn tiles and move the station through the game's own incremental power
+// updates. Every CHECKPOINT_EVERY moves the board is packed into a
+// checkpoint, so jumping far only restores the nearest checkpoint before the
+// move and replays what follows it
+class MoveJournal {
+  static final int ROTATE = 0;
+  static final int CHECKPOINT_EVERY = 4096;
+
+  LightEmAll game;
+  int[] moves;
+  int limit;
+  // the number of the oldest move kept, how many moves the game has had
+  // made, and how many were made before the moves that can be redone
+  int first;
+  int position;
+  int end;
+  // the board after every multiple of CHECKPOINT_EVERY moves from first on,
+  // its masks packed two to a byte followed by the stations' indices
+  ArrayList<byte[]> checkpoints;
+  // whether the journal is making a move itself, which it doesn't record
+  boolean applying;
+
+  // starts keeping the moves made in the given game from now on, up to the
+  // given number of them
+  MoveJournal(LightEmAll game, int limit) {
+    this.game = game;
+    this.limit = Math.max(CHECKPOINT_EVERY * 2, limit);
+    this.moves = new int[1024];
+    this.checkpoints = new ArrayList<byte[]>();
+    this.checkpoints.add(this.checkpoint());
+    game.journal = this;
+  }
+
+  // forgets every move kept, making the board as it is now the one there's
+  // nothing to undo from, for when the game changes it some other way
+  void reset() {
+    this.first = 0;
+    this.position = 0;
+    this.end = 0;
+    this.checkpoints.clear();
+    this.checkpoints.add(this.checkpoint());
+  }
+
+  // returns the move code for the power station moving in the given
+  // direction
+  static int station(int dir) {
+    return 1 + Integer.numberOfTrailingZeros(dir);
+  }
+
+  // records the given move, just made on the tile at the given index,
+  // dropping any moves that could have been redone
+  void record(int index, int op) {
+    if (this.applying) {
+      return;
+    }
+    if (this.position < this.end) {
+      this.end = this.position;
+      int keep = (this.end - this.first) / CHECKPOINT_EVERY + 1;
+      while (this.checkpoints.size() > keep) {
+        this.checkpoints.remove(this.checkpoints.size() - 1);
+      }
+    }
+    if (this.end - this.first == this.moves.length) {
+      if (this.moves.length < this.limit) {
+        this.grow();
+      }
+      else {
+        this.first += CHECKPOINT_EVERY;
+        this.checkpoints.remove(0);
+      }
+    }
+    this.moves[this.position % this.moves.length] = index << 3 | op;
+    this.position++;
+    this.end = this.position;
+    if (this.position % CHECKPOINT_EVERY == 0) {
+      this.checkpoints.add(this.checkpoint());
+    }
+  }
+
+  // doubles the room for moves
+  void grow() {
+    int[] bigger = new int[this.moves.length * 2];
+    for (int move = this.first; move < this.end; move++) {
+      bigger[move % bigger.length] = this.moves[move % this.moves.length];
+    }
+    this.moves = bigger;
+  }
+
+  // returns the game's board packed the way checkpoints are kept
+  byte[] checkpoint() {
+    int tiles = this.game.width * this.game.height;
+    int stations = this.game.stations.length;
+    byte[] packed = new byte[(tiles + 1) / 2 + 4 * stations];
+    for (ArrayList<GamePiece> column : this.game.board) {
+      for (GamePiece gp : column) {
+        int index = gp.row * this.game.width + gp.col;
+        packed[index >> 1] |= gp.mask() << ((index & 1) << 2);
+      }
+    }
+    for (int k = 0; k < stations; k++) {
+      int station = this.game.stationIndex(k);
+      for (int i = 0; i < 4; i++) {
+        packed[(tiles + 1) / 2 + 4 * k + i] = (byte) (station >>> (24 - 8 * i));
+      }
+    }
+    return packed;
+  }
+
+  // undoes the last move made, returning false if there's none to undo
+  boolean undo() {
+    if (this.position == this.first) {
+      return false;
+    }
+    this.position--;
+    this.apply(this.moves[this.position % this.moves.length], true);
+    return true;
+  }
+
+  // makes the last undone move again, returning false if there's none
+  boolean redo() {
+    if (this.position == this.end) {
+      return false;
+    }
+    this.apply(this.moves[this.position % this.moves.length], false);
+    this.position++;
+    return true;
+  }
+
+  // makes the given move, or undoes it
+  void apply(int move, boolean undo) {
+    int index = move >>> 3;
+    int op = move & 7;
+    this.applying = true;
+    if (op == ROTATE) {
+      this.game.turnAt(index, undo ? 3 : 1);
+    }
+    else {
+      int moved = this.game.neighborIndex(index, 1 << (op - 1));
+      int target = undo ? index : moved;
+      int k = this.game.stationAt(undo ? moved : index);
+      this.game.moveStation(k, target / this.game.width, target % this.game.width);
+    }
+    this.applying = false;
+  }
+
+  // puts the game back the way it was after the given number of moves,
+  // which must be kept, by undoing or redoing moves if there are only a few
+  // to go through, and otherwise by restoring the nearest checkpoint
+  // before it and redoing the moves after that
+  void jumpTo(int move) {
+    if (move < this.first || move > this.end) {
+      throw new IllegalArgumentException("move " + move + " isn't kept");
+    }
+    if (move <= this.position && this.position - move <= CHECKPOINT_EVERY) {
+      while (this.position > move) {
+        this.undo();
+      }
+      return;
+    }
+    int checkpoint = move - (move - this.first) % CHECKPOINT_EVERY;
+    if (move < this.position || move - this.position > move - checkpoint) {
+      byte[] packed = this.checkpoints.get((checkpoint - this.first) / CHECKPOINT_EVERY);
+      int[] stations = new int[this.game.stations.length];
+      int offset = (this.game.width * this.game.height + 1) / 2;
+      for (int k = 0; k < stations.length; k++) {
+        for (int i = 0; i < 4; i++) {
+          stations[k] = stations[k] << 8 | (packed[offset + 4 * k + i] & 0xFF);
+        }
+      }
+      this.game.restore(packed, stations);
+      this.position = checkpoint;
+    }
+    while (this.position < move) {
+      this.redo();
+    }
+  }
+}
@@ -0,0 +1,422 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// represents a LightEmAll board packed into primitive arrays: one byte per
+// tile holding its 4-bit connection mask, and bitsets for the powered tiles
+// and the power stations, all indexed by row * width + col
+//
+// a GamePiece costs a few dozen bytes once its object header, fields and
+// list slots are counted, where a packed tile costs a little over one, so
+// boards too big to keep as objects can still be kept in memory this way
+class PackedBoard {
+  int width;
+  int height;
+  byte[] masks;
+  long[] powered;
+  long[] stations;
+  int poweredCount;
+  // the masks as they were generated, before they were scrambled, or null if
+  // they aren't known
+  byte[] solution;
+  // scratch space for updatePower, only allocated once it is needed
+  int[] stack;
+  // the direction each powered tile gets its power from, 0 for a station,
+  // or null while power is only ever recomputed in full, and scratch space
+  // for the tiles rotateAt unpowers
+  byte[] parents;
+  int[] cut;
+
+  PackedBoard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.masks = new byte[width * height];
+    this.powered = new long[(width * height + 63) >> 6];
+    this.stations = new long[(width * height + 63) >> 6];
+    this.poweredCount = 0;
+  }
+
+  // packs the tiles of the given game
+  PackedBoard(LightEmAll game) {
+    this(game.width, game.height);
+    for (int col = 0; col < this.width; col++) {
+      ArrayList<GamePiece> column = game.board.get(col);
+      for (int row = 0; row < this.height; row++) {
+        GamePiece gp = column.get(row);
+        int index = this.index(row, col);
+        this.masks[index] = (byte) gp.mask();
+        this.setStation(index, gp.powerStation);
+        this.setPowered(index, gp.powered);
+      }
+    }
+  }
+
+  // generates a random board with Kruskal’s Algorithm, scrambles it and puts
+  // its power station at the given position; draws from rand in the same order
+  // as LightEmAll.makeRandomBoard, so the same seed gives the same board
+  static PackedBoard random(int width, int height, int stationRow, int stationCol, Random rand) {
+    return PackedBoard.random(new KruskalGenerator(), width, height, stationRow, stationCol,
+        rand);
+  }
+
+  // generates a random board from a tree the given generator builds,
+  // scrambles it and puts its power station at the given position
+  static PackedBoard random(BoardGenerator generator, int width, int height, int stationRow,
+      int stationCol, Random rand) {
+    PackedBoard packed = new PackedBoard(width, height);
+    packed.masks = generator.spanningTree(width, height, rand);
+    packed.solution = packed.masks.clone();
+    int station = packed.index(stationRow, stationCol);
+    packed.setStation(station, true);
+    packed.setPowered(station, true);
+
+    for (int col = 0; col < width; col++) {
+      for (int row = 0; row < height; row++) {
+        int index = packed.index(row, col);
+        int spins = rand.nextInt(4);
+        for (int i = 0; i < spins; i++) {
+          packed.rotate(index);
+        }
+      }
+    }
+    return packed;
+  }
+
+  // returns the diameter of the given width x height solved board: the most
+  // wires on the path between any two of its tiles, found by searching once
+  // from a corner for the farthest tile and again from that tile, which on a
+  // tree is always one end of a longest path
+  static int diameter(byte[] solution, int width, int height) {
+    int[] queue = new int[solution.length];
+    int[] dist = new int[solution.length];
+    int far = PackedBoard.farthest(solution, width, height, 0, queue, dist);
+    far = PackedBoard.farthest(solution, width, height, far, queue, dist);
+    return dist[far];
+  }
+
+  // searches breadth first from the given tile over the wires of the given
+  // masks, leaving the distance to each tile it reaches in dist, and returns
+  // the farthest tile
+  static int farthest(byte[] masks, int width, int height, int from, int[] queue,
+      int[] dist) {
+    Arrays.fill(dist, -1);
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = from;
+    dist[from] = 0;
+    int last = from;
+    while (head < tail) {
+      int current = queue[head++];
+      last = current;
+      int mask = masks[current];
+      int row = current / width;
+      int col = current - row * width;
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int next = -1;
+        if (dir == GamePiece.TOP && row > 0) {
+          next = current - width;
+        }
+        else if (dir == GamePiece.RIGHT && col < width - 1) {
+          next = current + 1;
+        }
+        else if (dir == GamePiece.BOTTOM && row < height - 1) {
+          next = current + width;
+        }
+        else if (dir == GamePiece.LEFT && col > 0) {
+          next = current - 1;
+        }
+        if (next >= 0 && (mask & dir) != 0 && (masks[next] & GamePiece.opposite(dir)) != 0
+            && dist[next] < 0) {
+          dist[next] = dist[current] + 1;
+          queue[tail++] = next;
+        }
+      }
+    }
+    return last;
+  }
+
+  // returns the index of the tile at the given position
+  int index(int row, int col) {
+    return row * this.width + col;
+  }
+
+  // returns the connection mask of the tile at the given index
+  int mask(int index) {
+    return this.masks[index];
+  }
+
+  // rotates the tile at the given index clockwise
+  void rotate(int index) {
+    this.masks[index] = (byte) GamePiece.rotateMask(this.masks[index]);
+  }
+
+  // returns the directions in which the tile at the given index has a wire
+  // that meets a wire from its neighbor
+  int linksAt(int index) {
+    int mask = this.masks[index];
+    int row = index / this.width;
+    int col = index - row * this.width;
+    int links = 0;
+
+    if ((mask & GamePiece.TOP) != 0 && row > 0
+        && (this.masks[index - this.width] & GamePiece.BOTTOM) != 0) {
+      links |= GamePiece.TOP;
+    }
+    if ((mask & GamePiece.RIGHT) != 0 && col < this.width - 1
+        && (this.masks[index + 1] & GamePiece.LEFT) != 0) {
+      links |= GamePiece.RIGHT;
+    }
+    if ((mask & GamePiece.BOTTOM) != 0 && row < this.height - 1
+        && (this.masks[index + this.width] & GamePiece.TOP) != 0) {
+      links |= GamePiece.BOTTOM;
+    }
+    if ((mask & GamePiece.LEFT) != 0 && col > 0
+        && (this.masks[index - 1] & GamePiece.RIGHT) != 0) {
+      links |= GamePiece.LEFT;
+    }
+    return links;
+  }
+
+  // returns the index of the tile next to the given one in the given
+  // direction; only meaningful when linksAt includes that direction
+  int neighborIndex(int index, int dir) {
+    if (dir == GamePiece.TOP) {
+      return index - this.width;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return index + 1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return index + this.width;
+    }
+    else {
+      return index - 1;
+    }
+  }
+
+  // is the tile at the given index powered?
+  boolean isPowered(int index) {
+    return (this.powered[index >> 6] & (1L << index)) != 0;
+  }
+
+  // powers or unpowers the tile at the given index
+  void setPowered(int index, boolean on) {
+    if (this.isPowered(index) != on) {
+      this.powered[index >> 6] ^= 1L << index;
+      this.poweredCount += on ? 1 : -1;
+    }
+  }
+
+  // is there a power station on the tile at the given index?
+  boolean isStation(int index) {
+    return (this.stations[index >> 6] & (1L << index)) != 0;
+  }
+
+  // places or removes a power station on the tile at the given index
+  void setStation(int index, boolean on) {
+    if (on) {
+      this.stations[index >> 6] |= 1L << index;
+    }
+    else {
+      this.stations[index >> 6] &= ~(1L << index);
+    }
+  }
+
+  // powers exactly the tiles connected to a power station
+  void updatePower() {
+    Arrays.fill(this.powered, 0L);
+    this.poweredCount = 0;
+    if (this.stack == null) {
+      this.stack = new int[this.masks.length];
+    }
+
+    int size = 0;
+    for (int word = 0; word < this.stations.length; word++) {
+      long bits = this.stations[word];
+      while (bits != 0) {
+        int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        if (!this.isPowered(index)) {
+          this.setPowered(index, true);
+          if (this.parents != null) {
+            this.parents[index] = 0;
+          }
+          this.stack[size++] = index;
+        }
+      }
+    }
+    this.spreadPower(size);
+  }
+
+  // powers everything linked to the powered tiles on the first size entries
+  // of the stack, recording where each gets its power from if that's kept
+  void spreadPower(int size) {
+    while (size > 0) {
+      int current = this.stack[--size];
+      int links = this.linksAt(current);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((links & dir) != 0) {
+          int next = this.neighborIndex(current, dir);
+          if (!this.isPowered(next)) {
+            this.setPowered(next, true);
+            if (this.parents != null) {
+              this.parents[next] = (byte) GamePiece.opposite(dir);
+            }
+            this.stack[size++] = next;
+          }
+        }
+      }
+    }
+  }
+
+  // starts keeping where each powered tile gets its power from, so rotateAt
+  // can bring the power up to date without recomputing all of it
+  void trackPower() {
+    this.parents = new byte[this.masks.length];
+    this.updatePower();
+  }
+
+  // rotates the tile at the given index clockwise and brings the power up to
+  // date the way LightEmAll.updatePowerAt does: every tile that got its power
+  // through a wire that came apart is unpowered, then anything still linked
+  // to a powered tile is lit again, so only the tiles whose power changes and
+  // their neighbors are visited
+  void rotateAt(int index) {
+    if (this.parents == null) {
+      this.trackPower();
+    }
+    if (this.stack == null) {
+      this.stack = new int[this.masks.length];
+    }
+    if (this.cut == null) {
+      this.cut = new int[this.masks.length];
+    }
+    int before = this.linksAt(index);
+    this.rotate(index);
+    int lost = before & ~this.linksAt(index);
+
+    int count = 0;
+    if (this.isPowered(index) && lost != 0) {
+      if ((lost & this.parents[index]) != 0) {
+        count = this.cutPower(index, count);
+      }
+      else {
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+          int next = this.neighborIndex(index, dir);
+          if ((lost & dir) != 0 && this.isPowered(next)
+              && this.parents[next] == GamePiece.opposite(dir)) {
+            count = this.cutPower(next, count);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      this.reconnectPower(this.cut[i]);
+    }
+    this.reconnectPower(index);
+  }
+
+  // unpowers the tile at the given index and every tile that got its power
+  // through it, adding them to cut after the first count entries, which
+  // doubles as the queue of tiles still to visit
+  int cutPower(int index, int count) {
+    int visited = count;
+    this.setPowered(index, false);
+    this.cut[count++] = index;
+    while (visited < count) {
+      int current = this.cut[visited++];
+      int dirs = BoardGenerator.onBoard(current, this.width, this.height);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        int next = this.neighborIndex(current, dir);
+        if ((dirs & dir) != 0 && this.isPowered(next)
+            && this.parents[next] == GamePiece.opposite(dir)) {
+          this.setPowered(next, false);
+          this.cut[count++] = next;
+        }
+      }
+    }
+    return count;
+  }
+
+  // powers whatever the tile at the given index now links to: a powered
+  // tile passes its power on, an unpowered one takes it from any powered
+  // neighbor it links to
+  void reconnectPower(int index) {
+    if (!this.isPowered(index)) {
+      int links = this.linksAt(index);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((links & dir) != 0 && this.isPowered(this.neighborIndex(index, dir))) {
+          this.stack[0] = this.neighborIndex(index, dir);
+          this.spreadPower(1);
+          return;
+        }
+      }
+      return;
+    }
+    this.stack[0] = index;
+    this.spreadPower(1);
+  }
+
+  // moves the power station on the tile at from to the tile at to, which
+  // must be linked to it; the same tiles stay powered, and if power is kept
+  // track of, the directions it arrives from turn around between the two
+  void moveStation(int from, int to) {
+    this.setStation(from, false);
+    this.setStation(to, true);
+    if (this.parents == null) {
+      return;
+    }
+    int root = to;
+    while (this.parents[root] != 0) {
+      root = this.neighborIndex(root, this.parents[root]);
+    }
+    if (root != from) {
+      this.updatePower();
+      return;
+    }
+    int current = to;
+    int dir = this.parents[current];
+    this.parents[current] = 0;
+    while (dir != 0) {
+      int next = this.neighborIndex(current, dir);
+      int nextDir = this.parents[next];
+      this.parents[next] = (byte) GamePiece.opposite(dir);
+      current = next;
+      dir = nextDir;
+    }
+  }
+
+  // is every tile on the board powered?
+  boolean allPowered() {
+    return this.poweredCount == this.masks.length;
+  }
+
+  // returns the connection masks packed two to a byte, the first tile of each
+  // pair in the low four bits
+  byte[] packMasks() {
+    byte[] packed = new byte[(this.masks.length + 1) / 2];
+    for (int i = 0; i < this.masks.length; i++) {
+      packed[i >> 1] |= this.masks[i] << ((i & 1) << 2);
+    }
+    return packed;
+  }
+
+  // sets the connection masks from ones packed by packMasks, starting at the
+  // given offset of data
+  void unpackMasks(byte[] data, int offset) {
+    for (int i = 0; i < this.masks.length; i++) {
+      this.masks[i] = (byte) ((data[offset + (i >> 1)] >> ((i & 1) << 2)) & 0xF);
+    }
+  }
+
+  // returns a GamePiece view of the tile at the given position; changes to
+  // the view are not written back to the board
+  GamePiece pieceAt(int row, int col) {
+    int index = this.index(row, col);
+    GamePiece gp = new GamePiece(row, col);
+    gp.setMask(this.masks[index]);
+    gp.powerStation = this.isStation(index);
+    gp.powered = this.isPowered(index);
+    return gp;
+  }
+}
@@ -0,0 +1,213 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// generates random boards on several cores, for grids too big to build on
+// one thread
+//
+// the spanning tree comes from Borůvka's algorithm: every round, each set of
+// connected tiles picks its cheapest edge to another set in parallel, and the
+// picked edges are joined with a lock-free union-find. Edge weights are hashed
+// from the seed and tied by edge number, so the tree is the one minimum
+// spanning tree for those weights however the rounds get scheduled. Tiles are
+// then scrambled in fixed blocks, each with its own random stream, so a seed
+// gives the same board on any number of threads. The work runs on a pool the
+// caller owns, so many generators can share one and none has to be shut down
+class ParallelBoardGenerator implements BoardGenerator {
+  // how many tiles share one scrambling stream
+  static final int BLOCK = 1 << 16;
+
+  ForkJoinPool pool;
+
+  ParallelBoardGenerator(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  // generates a scrambled width x height board with its power station in the
+  // top left corner
+  PackedBoard generate(int width, int height, long seed) {
+    PackedBoard packed = new PackedBoard(width, height);
+    packed.masks = this.spanningTree(width, height, seed);
+    this.scramble(packed, seed);
+    packed.setStation(0, true);
+    packed.setPowered(0, true);
+    return packed;
+  }
+
+  // builds the spanning tree for a seed drawn from rand
+  public byte[] spanningTree(int width, int height, Random rand) {
+    return this.spanningTree(width, height, rand.nextLong());
+  }
+
+  // builds the spanning tree for the given seed and returns the connection
+  // mask of each tile, indexed by row * width + col
+  byte[] spanningTree(int width, int height, long seed) {
+    int tiles = width * height;
+    AtomicIntegerArray parent = new AtomicIntegerArray(tiles);
+    AtomicLongArray cheapest = new AtomicLongArray(tiles);
+    // one flag per edge, numbered like the edges in KruskalGenerator
+    byte[] chosen = new byte[tiles * 2];
+
+    this.forRange(tiles, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        parent.set(i, i);
+      }
+      return 0;
+    });
+
+    long joined = tiles > 1 ? 1 : 0;
+    while (joined > 0) {
+      this.forRange(tiles, (from, to) -> {
+        for (int i = from; i < to; i++) {
+          cheapest.set(i, Long.MAX_VALUE);
+        }
+        return 0;
+      });
+
+      this.forRange(tiles, (from, to) -> {
+        for (int a = from; a < to; a++) {
+          int row = a / width;
+          int col = a - row * width;
+          if (row < height - 1 && chosen[a * 2] == 0) {
+            this.offer(parent, cheapest, a, a + width, a * 2, seed);
+          }
+          if (col < width - 1 && chosen[a * 2 + 1] == 0) {
+            this.offer(parent, cheapest, a, a + 1, a * 2 + 1, seed);
+          }
+        }
+        return 0;
+      });
+
+      joined = this.forRange(tiles, (from, to) -> {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+          long key = cheapest.get(i);
+          if (key != Long.MAX_VALUE) {
+            int edge = (int) key;
+            int a = edge >> 1;
+            int b = (edge & 1) != 0 ? a + 1 : a + width;
+            chosen[edge] = 1;
+            if (this.union(parent, a, b)) {
+              count++;
+            }
+          }
+        }
+        return count;
+      });
+    }
+
+    byte[] masks = new byte[tiles];
+    this.forRange(tiles, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int row = i / width;
+        int col = i - row * width;
+        int mask = 0;
+        if (row > 0 && chosen[(i - width) * 2] != 0) {
+          mask |= GamePiece.TOP;
+        }
+        if (chosen[i * 2 + 1] != 0) {
+          mask |= GamePiece.RIGHT;
+        }
+        if (chosen[i * 2] != 0) {
+          mask |= GamePiece.BOTTOM;
+        }
+        if (col > 0 && chosen[(i - 1) * 2 + 1] != 0) {
+          mask |= GamePiece.LEFT;
+        }
+        masks[i] = (byte) mask;
+      }
+      return 0;
+    });
+    return masks;
+  }
+
+  // rotates every tile of the given board a random number of times
+  void scramble(PackedBoard packed, long seed) {
+    int tiles = packed.masks.length;
+    int blocks = (tiles + BLOCK - 1) / BLOCK;
+    this.forRange(blocks, (from, to) -> {
+      for (int block = from; block < to; block++) {
+        SplittableRandom rand = new SplittableRandom(mix(seed ^ mix(block)));
+        int end = Math.min(tiles, (block + 1) * BLOCK);
+        for (int i = block * BLOCK; i < end; i++) {
+          int mask = packed.masks[i];
+          for (int spins = rand.nextInt(4); spins > 0; spins--) {
+            mask = GamePiece.rotateMask(mask);
+          }
+          packed.masks[i] = (byte) mask;
+        }
+      }
+      return 0;
+    });
+  }
+
+  // lowers the cheapest edge out of both tiles' sets to the given edge if it
+  // is cheaper, unless the tiles are already connected
+  void offer(AtomicIntegerArray parent, AtomicLongArray cheapest, int a, int b, int edge,
+      long seed) {
+    int rootA = this.find(parent, a);
+    int rootB = this.find(parent, b);
+    if (rootA != rootB) {
+      long key = (mix(seed + edge) >>> 33) << 32 | edge;
+      this.lower(cheapest, rootA, key);
+      this.lower(cheapest, rootB, key);
+    }
+  }
+
+  // lowers the value at the given index to key if key is smaller
+  void lower(AtomicLongArray cheapest, int index, long key) {
+    long current = cheapest.get(index);
+    while (key < current && !cheapest.compareAndSet(index, current, key)) {
+      current = cheapest.get(index);
+    }
+  }
+
+  // finds the root of the set the tile belongs to, halving the path to it;
+  // a tile's parent only ever moves closer to its root, so the halving needs
+  // no locking
+  int find(AtomicIntegerArray parent, int item) {
+    int next = parent.get(item);
+    while (next != item) {
+      int grandparent = parent.get(next);
+      parent.compareAndSet(item, next, grandparent);
+      item = next;
+      next = grandparent;
+    }
+    return item;
+  }
+
+  // connects the sets that contain the two given tiles, returning whether
+  // they were apart; roots are always hung below a smaller root, so two
+  // threads can't link a loop
+  boolean union(AtomicIntegerArray parent, int a, int b) {
+    while (true) {
+      int rootA = this.find(parent, a);
+      int rootB = this.find(parent, b);
+      if (rootA == rootB) {
+        return false;
+      }
+      int child = Math.max(rootA, rootB);
+      int root = Math.min(rootA, rootB);
+      if (parent.compareAndSet(child, child, root)) {
+        return true;
+      }
+    }
+  }
+
+  // runs the given body over 0 up to count split into chunks across the pool,
+  // returning the sum of what each chunk returns
+  long forRange(int count, RangeBody body) {
+    int chunk = Math.max(4096, count / (this.pool.getParallelism() * 4));
+    return this.pool.invoke(new RangeTask(body, 0, count, chunk));
+  }
+
+  // scrambles the bits of the given value (the SplitMix64 finalizer)
+  static long mix(long value) {
+    long z = value * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,19 @@
+import java.util.ArrayDeque;
+
+// the games of one size a BoardPool keeps ready
+class PoolSize {
+  int width;
+  int height;
+  // how many bytes one of the games takes
+  long bytes;
+  // how many games of this size have been taken
+  long uses;
+  ArrayDeque<LightEmAll> ready;
+
+  PoolSize(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.bytes = (long) width * height * BoardPool.BYTES_PER_TILE;
+    this.ready = new ArrayDeque<LightEmAll>();
+  }
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// randomized Prim's algorithm: the tree grows from a random tile, each step
+// wiring a random tile next to the tree to a random neighbor already in it
+//
+// the tiles next to the tree are kept in an array, from which a random one is
+// swapped out in constant time, so the tree takes one pass over the tiles and
+// about 5 bytes of scratch space per tile. Grows outwards evenly, so paths
+// from the middle are short and branch often
+class PrimGenerator implements BoardGenerator {
+  // what's known of each tile while the tree grows
+  static final byte UNSEEN = 0;
+  static final byte FRONTIER = 1;
+  static final byte IN_TREE = 2;
+
+  // builds the tree with Prim's algorithm
+  public byte[] spanningTree(int width, int height, Random rand) {
+    SplittableRandom random = new SplittableRandom(rand.nextLong());
+    int tiles = width * height;
+    byte[] masks = new byte[tiles];
+    byte[] state = new byte[tiles];
+    int[] frontier = new int[tiles];
+    int size = 0;
+
+    int start = random.nextInt(tiles);
+    state[start] = IN_TREE;
+    size = this.addFrontier(start, width, height, state, frontier, size);
+    while (size > 0) {
+      int at = random.nextInt(size);
+      int tile = frontier[at];
+      frontier[at] = frontier[--size];
+
+      int inTree = 0;
+      int dirs = BoardGenerator.onBoard(tile, width, height);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+        if ((dirs & dir) != 0 && state[BoardGenerator.neighbor(tile, width, dir)] == IN_TREE) {
+          inTree |= dir;
+        }
+      }
+      BoardGenerator.connect(masks, width, tile, BoardGenerator.pick(inTree, random));
+      state[tile] = IN_TREE;
+      size = this.addFrontier(tile, width, height, state, frontier, size);
+    }
+    return masks;
+  }
+
+  // adds the unseen neighbors of the given tile to the frontier, returning
+  // its new size
+  int addFrontier(int tile, int width, int height, byte[] state, int[] frontier, int size) {
+    int dirs = BoardGenerator.onBoard(tile, width, height);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir <<= 1) {
+      if ((dirs & dir) != 0) {
+        int next = BoardGenerator.neighbor(tile, width, dir);
+        if (state[next] == UNSEEN) {
+          state[next] = FRONTIER;
+          frontier[size++] = next;
+        }
+      }
+    }
+    return size;
+  }
+}
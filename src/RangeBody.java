@@ -0,0 +1,5 @@
+// represents work done over a range of indices
+interface RangeBody {
+  // does the work for the indices from (inclusive) to to (exclusive)
+  long run(int from, int to);
+}
@@ -0,0 +1,30 @@
+import java.util.concurrent.RecursiveTask;
+
+// splits a range of indices in half until it is small enough to run directly
+class RangeTask extends RecursiveTask<Long> {
+  private static final long serialVersionUID = 1L;
+
+  RangeBody body;
+  int from;
+  int to;
+  int chunk;
+
+  RangeTask(RangeBody body, int from, int to, int chunk) {
+    this.body = body;
+    this.from = from;
+    this.to = to;
+    this.chunk = chunk;
+  }
+
+  // runs the body over this range, forking off half of it while it is big
+  protected Long compute() {
+    if (this.to - this.from <= this.chunk) {
+      return this.body.run(this.from, this.to);
+    }
+    int middle = (this.from + this.to) >>> 1;
+    RangeTask left = new RangeTask(this.body, this.from, middle, this.chunk);
+    left.fork();
+    long right = new RangeTask(this.body, middle, this.to, this.chunk).compute();
+    return right + left.join();
+  }
+}
@@ -0,0 +1,246 @@
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// hosts many independent games in one JVM without any window, each a
+// PackedBoard driven by int commands, e.g.
+//   java SessionHost 10000 8 9 200
+// opens 10000 8x9 sessions, sends each 200 random commands from a local
+// load generator and prints sessions per GB and commands per second
+//
+// a command is an opcode in its top four bits and an argument in the rest:
+// ROTATE turns the tile at the argument's index, MOVE moves the power station
+// one tile in the argument's direction (a GamePiece direction) if a wire
+// joins the two tiles, as the arrow keys do, NEW generates the board for the
+// argument as a seed, and STATUS does nothing. Every command is answered with
+// the number of powered tiles, plus WON if that is all of them
+//
+// each session is an actor: commands wait in its own mailbox, and while it
+// has any, one task on the host's executor works through them in order, so a
+// session never runs on two threads at once and needs no locking of its
+// board. The executor runs each task on a virtual thread where the JVM has
+// them, and on a fixed pool of threads otherwise. What sessions can share is
+// shared: the boards generated for a seed, which sessions copy when they
+// start, and the scratch stacks power propagation needs, which sessions only
+// borrow while they run. Only the TEMPLATE_LIMIT most recently used boards
+// are kept, so sessions asking for ever new seeds can't fill the heap; the
+// lock on them is only held to look a board up, never while one is
+// generated, so sessions asking for boards that are kept don't wait on
+// sessions asking for new ones, and several boards generate at once. Each
+// session keeps where its tiles get their power from, so a command only
+// visits the tiles whose power it changes rather than the whole board
+class SessionHost {
+  static final int ROTATE = 1 << 28;
+  static final int MOVE = 2 << 28;
+  static final int NEW = 3 << 28;
+  static final int STATUS = 4 << 28;
+  static final int OPCODE = 0xF << 28;
+  static final int ARGUMENT = (1 << 28) - 1;
+  static final int WON = 1 << 30;
+  // how many commands a session may have waiting before send refuses more
+  static final int MAILBOX_LIMIT = 1024;
+  // how many commands a session runs before letting other sessions run
+  static final int BATCH = 64;
+  // how many generated boards are kept for sessions to copy
+  static final int TEMPLATE_LIMIT = 256;
+
+  ExecutorService executor;
+  boolean virtualThreads;
+  SessionListener listener;
+  // the boards generated most recently, or being generated, by size and
+  // seed, least recently used first, never changed once made
+  LinkedHashMap<TemplateKey, CompletableFuture<PackedBoard>> templates;
+  ConcurrentLinkedQueue<int[]> stacks;
+  // how many commands have been queued, and how many have been run
+  LongAdder accepted;
+  LongAdder processed;
+
+  // hosts sessions on virtual threads if there are any, or on the given
+  // number of threads, answering commands to the given listener unless it's
+  // null
+  SessionHost(int threads, SessionListener listener) {
+    this.executor = SessionHost.newExecutor(threads);
+    this.virtualThreads = !(this.executor instanceof ThreadPoolExecutor);
+    this.listener = listener;
+    this.templates =
+        new LinkedHashMap<TemplateKey, CompletableFuture<PackedBoard>>(16, 0.75f, true);
+    this.stacks = new ConcurrentLinkedQueue<int[]>();
+    this.accepted = new LongAdder();
+    this.processed = new LongAdder();
+  }
+
+  // returns an executor starting a virtual thread per task, or, before Java
+  // 21, a pool of the given number of threads
+  static ExecutorService newExecutor(int threads) {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(threads);
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    if (args.length < 4 || args.length > 5) {
+      System.err.println(
+          "usage: java SessionHost <sessions> <width> <height> <commands each> [threads]");
+      return;
+    }
+    int count = Integer.parseInt(args[0]);
+    int width = Integer.parseInt(args[1]);
+    int height = Integer.parseInt(args[2]);
+    int commands = Integer.parseInt(args[3]);
+    int threads = args.length > 4 ? Integer.parseInt(args[4])
+        : Runtime.getRuntime().availableProcessors();
+
+    SessionHost host = new SessionHost(threads, null);
+    long before = SessionHost.usedMemory();
+    GameSession[] sessions = new GameSession[count];
+    for (int i = 0; i < count; i++) {
+      sessions[i] = host.open(width, height, i % 100);
+    }
+    long used = SessionHost.usedMemory() - before;
+
+    long start = System.nanoTime();
+    long sent = 0;
+    long state = 1;
+    for (int round = 0; round < commands; round++) {
+      for (GameSession session : sessions) {
+        state = ParallelBoardGenerator.mix(state);
+        int command = (state & 7) == 0 ? MOVE | 1 << (int) ((state >>> 3) & 3)
+            : ROTATE | (int) ((state >>> 8) % (width * height));
+        while (!host.send(session, command)) {
+          Thread.onSpinWait();
+        }
+        sent++;
+      }
+    }
+    host.close();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%d sessions of %dx%d on %s%n", count, width, height,
+        host.virtualThreads ? "virtual threads" : threads + " threads");
+    System.out.printf("%.1f MB for the sessions, %.0f sessions/GB%n", used / 1e6,
+        count / Math.max(used / 1e9, 1e-9));
+    System.out.printf("%d commands in %.3f s, %.0f commands/s%n", sent, seconds,
+        sent / seconds);
+  }
+
+  // returns roughly how many bytes of the heap are in use after a collection
+  static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // opens a session on the board generated for the given seed
+  GameSession open(int width, int height, long seed) {
+    return new GameSession(this.template(width, height, seed));
+  }
+
+  // returns the board generated for the given size and seed, generating it
+  // if it isn't among the ones kept, and forgetting the least recently used
+  // one if that makes too many. Only the first thread to ask for a board
+  // generates it, outside the lock; the rest wait for that board alone
+  PackedBoard template(int width, int height, long seed) {
+    TemplateKey key = new TemplateKey(width, height, seed);
+    CompletableFuture<PackedBoard> template;
+    boolean generate = false;
+    synchronized (this.templates) {
+      template = this.templates.get(key);
+      if (template == null) {
+        template = new CompletableFuture<PackedBoard>();
+        generate = true;
+        this.templates.put(key, template);
+        if (this.templates.size() > TEMPLATE_LIMIT) {
+          Iterator<TemplateKey> eldest = this.templates.keySet().iterator();
+          eldest.next();
+          eldest.remove();
+        }
+      }
+    }
+
+    if (generate) {
+      try {
+        PackedBoard board = PackedBoard.random(width, height, 0, 0, new Random(seed));
+        board.trackPower();
+        board.stack = null;
+        template.complete(board);
+      }
+      catch (RuntimeException e) {
+        synchronized (this.templates) {
+          this.templates.remove(key, template);
+        }
+        template.completeExceptionally(e);
+        throw e;
+      }
+    }
+    return template.join();
+  }
+
+  // queues the given command for the given session, returning false without
+  // queueing it if the session already has a full mailbox
+  boolean send(GameSession session, int command) {
+    int posted = session.post(command);
+    if (posted != GameSession.FULL) {
+      this.accepted.increment();
+    }
+    if (posted == GameSession.SCHEDULE) {
+      this.executor.execute(() -> this.drain(session));
+    }
+    return posted != GameSession.FULL;
+  }
+
+  // runs up to a batch of the session's commands, then hands the session
+  // back to the executor if it has more
+  void drain(GameSession session) {
+    int[] stack = this.borrowStack(session.board.masks.length);
+    int[] cut = this.borrowStack(session.board.masks.length);
+    int done = 0;
+    boolean more = true;
+    while (more && done < BATCH) {
+      int command = session.take();
+      if (command < 0) {
+        more = false;
+      }
+      else {
+        int reply = session.run(command, stack, cut, this);
+        done++;
+        if (this.listener != null) {
+          this.listener.reply(session, command, reply);
+        }
+      }
+    }
+    this.stacks.offer(stack);
+    this.stacks.offer(cut);
+    this.processed.add(done);
+    if (more && session.reschedule()) {
+      this.executor.execute(() -> this.drain(session));
+    }
+  }
+
+  // returns a scratch stack with room for the given number of tiles
+  int[] borrowStack(int tiles) {
+    int[] stack = this.stacks.poll();
+    return stack != null && stack.length >= tiles ? stack : new int[tiles];
+  }
+
+  // waits for the commands already queued to be run, then stops the
+  // executor; no commands may be sent meanwhile
+  void close() throws InterruptedException {
+    while (this.processed.sum() < this.accepted.sum()) {
+      Thread.sleep(1);
+    }
+    this.executor.shutdown();
+    this.executor.awaitTermination(1, TimeUnit.MINUTES);
+  }
+}
@@ -0,0 +1,5 @@
+// is told the reply to every command a SessionHost runs
+interface SessionListener {
+  // the given session ran the given command and answered with the given reply
+  void reply(GameSession session, int command, int reply);
+}
@@ -0,0 +1,27 @@
+// the size and seed a SessionHost template board was generated for
+class TemplateKey {
+  int width;
+  int height;
+  long seed;
+
+  TemplateKey(int width, int height, long seed) {
+    this.width = width;
+    this.height = height;
+    this.seed = seed;
+  }
+
+  // is the given object a key for the same size and seed?
+  public boolean equals(Object other) {
+    if (!(other instanceof TemplateKey)) {
+      return false;
+    }
+    TemplateKey that = (TemplateKey) other;
+    return this.width == that.width && this.height == that.height && this.seed == that.seed;
+  }
+
+  // returns a hash of the size and seed
+  public int hashCode() {
+    return Long.hashCode(ParallelBoardGenerator.mix(this.seed ^ ((long) this.width << 32
+        | this.height & 0xFFFFFFFFL)));
+  }
+}
@@ -0,0 +1,61 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+import javalib.worldimages.*;
+
+// holds a prebuilt image of every tile that can appear on the board, so
+// makeScene can reuse them instead of building new ones every frame; a tile
+// is one of 16 connection masks, drawn in one of a few wire colors, with or
+// without a power station
+class TileImageCache {
+  // the cache makeScene last asked for
+  static volatile TileImageCache shared;
+
+  int tileSize;
+  int wireWidth;
+  Color[] colors;
+  WorldImage[] images;
+
+  TileImageCache(int tileSize, int wireWidth, Color... colors) {
+    this.tileSize = tileSize;
+    this.wireWidth = wireWidth;
+    this.colors = colors.clone();
+    this.images = new WorldImage[colors.length * 32];
+    for (int color = 0; color < colors.length; color++) {
+      for (int mask = 0; mask < 16; mask++) {
+        this.images[this.slot(mask, color, false)] = GamePiece.drawTile(mask, tileSize, wireWidth,
+            colors[color], false);
+        this.images[this.slot(mask, color, true)] = GamePiece.drawTile(mask, tileSize, wireWidth,
+            colors[color], true);
+      }
+    }
+  }
+
+  // returns the shared cache, building a new one in its place if the tile
+  // size or colors have changed since it was built
+  static TileImageCache shared(int tileSize, int wireWidth, Color... colors) {
+    TileImageCache cache = TileImageCache.shared;
+    if (cache == null || !cache.matches(tileSize, wireWidth, colors)) {
+      cache = new TileImageCache(tileSize, wireWidth, colors);
+      TileImageCache.shared = cache;
+    }
+    return cache;
+  }
+
+  // was this cache built with the given settings?
+  boolean matches(int tileSize, int wireWidth, Color... colors) {
+    return this.tileSize == tileSize && this.wireWidth == wireWidth
+        && Arrays.equals(this.colors, colors);
+  }
+
+  // returns the image of a tile with the given connection mask, drawn in the
+  // color at the given index
+  WorldImage get(int mask, int color, boolean hasPowerStation) {
+    return this.images[this.slot(mask, color, hasPowerStation)];
+  }
+
+  // returns where the image with the given settings is kept
+  int slot(int mask, int color, boolean hasPowerStation) {
+    return (color * 2 + (hasPowerStation ? 1 : 0)) * 16 + mask;
+  }
+}
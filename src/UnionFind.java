@@ -0,0 +1,45 @@
+// helps keep track of which pieces are connected when building the game board,
+// naming each tile by its index (row * width + col)
+class UnionFind {
+  int[] parent;
+  byte[] rank;
+
+  // starts every one of the given number of tiles in a set of its own
+  UnionFind(int size) {
+    this.parent = new int[size];
+    this.rank = new byte[size];
+    for (int i = 0; i < size; i++) {
+      this.parent[i] = i;
+    }
+  }
+
+  // finds the root of the set that the tile belongs to
+  int find(int item) {
+    while (this.parent[item] != item) {
+      this.parent[item] = this.parent[this.parent[item]]; // path halving
+      item = this.parent[item];
+    }
+    return item;
+  }
+
+  // connects the sets that contain the two given tiles, hanging the shorter
+  // tree under the taller one, and returns whether they were apart before
+  boolean union(int a, int b) {
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    if (rootA == rootB) {
+      return false;
+    }
+    if (this.rank[rootA] < this.rank[rootB]) {
+      this.parent[rootA] = rootB;
+    }
+    else if (this.rank[rootA] > this.rank[rootB]) {
+      this.parent[rootB] = rootA;
+    }
+    else {
+      this.parent[rootB] = rootA;
+      this.rank[rootA]++;
+    }
+    return true;
+  }
+}
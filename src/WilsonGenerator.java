@@ -0,0 +1,41 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// Wilson's algorithm: starting with one random tile in the tree, walks at
+// random from each tile not yet in it until the walk hits the tree, then adds
+// the walk's path with its loops erased
+//
+// a walk only remembers the way it last left each tile, which erases the
+// loops as it goes, so the scratch space is a byte and a bit per tile. Every
+// spanning tree is equally likely, but the first walks have to find a small
+// tree, so it's the slowest of the generators, taking about n log n steps
+// on an n tile board
+class WilsonGenerator implements BoardGenerator {
+  // builds the tree with Wilson's algorithm
+  public byte[] spanningTree(int width, int height, Random rand) {
+    SplittableRandom random = new SplittableRandom(rand.nextLong());
+    int tiles = width * height;
+    byte[] masks = new byte[tiles];
+    byte[] exits = new byte[tiles];
+    long[] inTree = new long[(tiles + 63) >> 6];
+
+    int root = random.nextInt(tiles);
+    inTree[root >> 6] |= 1L << root;
+    for (int start = 0; start < tiles; start++) {
+      int tile = start;
+      while ((inTree[tile >> 6] & (1L << tile)) == 0) {
+        int dir = BoardGenerator.pick(BoardGenerator.onBoard(tile, width, height), random);
+        exits[tile] = (byte) dir;
+        tile = BoardGenerator.neighbor(tile, width, dir);
+      }
+
+      tile = start;
+      while ((inTree[tile >> 6] & (1L << tile)) == 0) {
+        inTree[tile >> 6] |= 1L << tile;
+        BoardGenerator.connect(masks, width, tile, exits[tile]);
+        tile = BoardGenerator.neighbor(tile, width, exits[tile]);
+      }
+    }
+    return masks;
+  }
+}